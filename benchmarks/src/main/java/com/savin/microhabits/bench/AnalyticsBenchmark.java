@@ -0,0 +1,40 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.analytics.CompletionMatrix;
+import com.savin.microhabits.analytics.CompletionReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full completion report over the whole habit set, and building its matrix alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+    private final LocalDate today = LocalDate.now();
+
+    @Benchmark
+    public CompletionReport report(HabitData data) {
+        return CompletionReport.of(data.list, today);
+    }
+
+    @Benchmark
+    public CompletionMatrix buildMatrix(HabitData data) {
+        return CompletionMatrix.of(data.list, today.minusDays(364), today);
+    }
+}
@@ -0,0 +1,71 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.exchange.ExchangeFormat;
+import com.savin.microhabits.exchange.HabitExporter;
+import com.savin.microhabits.exchange.HabitImporter;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV and JSON Lines import into an empty service, and export of the same habits.
+ * Uses its own smaller sets because the whole export is held in memory; divide the
+ * row count printed at setup by the time per operation for rows per second.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExchangeBenchmark {
+
+    @Param({"1000", "10000"})
+    public int habits;
+
+    @Param({"1", "5"})
+    public int years;
+
+    @Param({"CSV", "JSON_LINES"})
+    public ExchangeFormat format;
+
+    private List<Habit> list;
+    private String exported;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        list = SaveFormatComparison.generate(habits, years * 365);
+        StringWriter out = new StringWriter();
+        long rows = HabitExporter.export(list, format, out);
+        exported = out.toString();
+        System.out.printf("%n%d rows, %.1f MB%n", rows, exported.length() / 1e6);
+    }
+
+    @Benchmark
+    public HabitImporter.Result importAll() throws IOException {
+        return new HabitImporter(new HabitService()).importFrom(new StringReader(exported), format);
+    }
+
+    @Benchmark
+    public long exportAll() throws IOException {
+        return HabitExporter.export(list, format, Writer.nullWriter());
+    }
+}
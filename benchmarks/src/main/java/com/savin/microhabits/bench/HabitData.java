@@ -0,0 +1,31 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Synthetic habit set shared by the JMH benchmarks: 100, 10k or 100k habits
+ * with 1, 5 or 10 years of mostly-daily history.
+ */
+@State(Scope.Benchmark)
+public class HabitData {
+
+    @Param({"100", "10000", "100000"})
+    public int habits;
+
+    @Param({"1", "5", "10"})
+    public int years;
+
+    public List<Habit> list;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        list = SaveFormatComparison.generate(habits, years * 365);
+    }
+}
@@ -0,0 +1,80 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Compares the old linear stream scan over a habit list with the indexed
+ * HabitService lookups, at 10k and 100k habits.
+ *
+ * Usage: HabitLookupBenchmark [sizes...]
+ */
+public final class HabitLookupBenchmark {
+
+    private HabitLookupBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0
+                ? new int[]{10_000, 100_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) {
+        List<Habit> habits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            habits.add(new Habit("Habit " + i, ""));
+        }
+        HabitService service = new HabitService();
+        service.replaceAll(habits);
+
+        // Bulk markToday touches every habit once, which is where the scan went quadratic
+        int lookups = Math.min(size, 20_000);
+        UUID[] ids = new UUID[lookups];
+        for (int i = 0; i < lookups; i++) {
+            ids[i] = habits.get((int) ((i * 7919L) % size)).getId();
+        }
+
+        long linearNanos = time(() -> {
+            for (UUID id : ids) {
+                linearFind(habits, id).orElseThrow().markCompleted(LocalDate.now(), true);
+            }
+        });
+
+        long indexedNanos = time(() -> {
+            for (UUID id : ids) {
+                service.markToday(id, true);
+            }
+        });
+
+        System.out.printf("%,d habits, %,d markToday calls: linear %,d ms, indexed %,d ms (%.0fx)%n",
+                size, lookups,
+                linearNanos / 1_000_000, indexedNanos / 1_000_000,
+                (double) linearNanos / Math.max(1, indexedNanos));
+    }
+
+    // Lookup as HabitService did it before the index was added
+    private static Optional<Habit> linearFind(List<Habit> habits, UUID id) {
+        return habits.stream()
+                .filter(h -> h.getId().equals(id))
+                .findFirst();
+    }
+
+    private static long time(Runnable work) {
+        work.run(); // warm-up
+        long start = System.nanoTime();
+        work.run();
+        return System.nanoTime() - start;
+    }
+}
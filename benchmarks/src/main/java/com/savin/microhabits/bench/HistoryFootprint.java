@@ -0,0 +1,78 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.DayBitSet;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Compares the retained heap of completion histories stored as
+ * HashMap&lt;LocalDate, Boolean&gt; (the old layout) and as DayBitSet.
+ *
+ * Usage: HistoryFootprint [habits] [years]
+ */
+public final class HistoryFootprint {
+
+    private HistoryFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int habits = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int days = years * 365;
+        LocalDate start = LocalDate.now().minusDays(days);
+
+        long mapBytes = retained(habits, i -> {
+            Map<LocalDate, Boolean> map = new HashMap<>();
+            for (int d = 0; d < days; d++) {
+                map.put(start.plusDays(d), (d + i) % 3 != 0);
+            }
+            return map;
+        });
+
+        long bitsBytes = retained(habits, i -> {
+            DayBitSet bits = new DayBitSet();
+            long first = start.toEpochDay();
+            for (int d = 0; d < days; d++) {
+                bits.set(first + d, (d + i) % 3 != 0);
+            }
+            return bits;
+        });
+
+        System.out.printf("%d habits x %d days%n", habits, days);
+        System.out.printf("HashMap<LocalDate, Boolean>: %,d bytes (%,d per habit)%n", mapBytes, mapBytes / habits);
+        System.out.printf("DayBitSet:                   %,d bytes (%,d per habit)%n", bitsBytes, bitsBytes / habits);
+        System.out.printf("Ratio: %.1fx%n", (double) mapBytes / Math.max(1, bitsBytes));
+    }
+
+    // Measures heap growth while the built objects are still reachable
+    private static long retained(int count, IntFunction<Object> factory) {
+        List<Object> keep = new ArrayList<>(count);
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            keep.add(factory.apply(i));
+        }
+        long after = usedHeap();
+        if (keep.size() != count) {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,132 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.http.HabitHttpServer;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drives the HTTP API from many concurrent clients and reports requests per second
+ * and latency percentiles. Nine in ten requests read one habit, the rest mark one done.
+ * Starts an embedded server with synthetic habits on a free port, with TCP_NODELAY on like the app.
+ *
+ * Usage: HttpLoadTest [habits] [clients] [seconds]
+ */
+public final class HttpLoadTest {
+
+    private static final int WARM_UP_SECONDS = 3;
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int habitCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        HabitService service = new HabitService();
+        service.replaceAll(SaveFormatComparison.generate(habitCount, 365));
+        UUID[] ids = service.getHabitsReadOnly().stream().map(Habit::getId).toArray(UUID[]::new);
+
+        try (HabitHttpServer server = new HabitHttpServer(service, 0)) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort() + "/habits/";
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build();
+
+            String authorization = "Bearer " + server.getToken();
+
+            run(client, base, authorization, ids, clients, WARM_UP_SECONDS);
+            System.out.printf("%,d habits, %d clients, %d s%n", habitCount, clients, seconds);
+            long[] latencies = run(client, base, authorization, ids, clients, seconds);
+            report(latencies, seconds);
+        }
+    }
+
+    // Returns the latency of every successful request in nanoseconds
+    private static long[] run(HttpClient client, String base, String authorization, UUID[] ids, int clients, int seconds)
+            throws Exception {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<long[]>> results = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> clientLoop(client, base, authorization, ids, end)));
+            }
+        }
+
+        long[] all = new long[0];
+        for (Future<long[]> result : results) {
+            long[] part = result.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + part.length);
+            System.arraycopy(part, 0, all, offset, part.length);
+        }
+        return all;
+    }
+
+    private static long[] clientLoop(HttpClient client, String base, String authorization, UUID[] ids, long end)
+            throws IOException, InterruptedException {
+        long[] latencies = new long[1024];
+        int count = 0;
+        int failures = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (System.nanoTime() < end) {
+            String url = base + ids[random.nextInt(ids.length)];
+            HttpRequest request = random.nextInt(10) == 0
+                    ? HttpRequest.newBuilder(URI.create(url + "/mark"))
+                            .header("Authorization", authorization)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{}")).build()
+                    : HttpRequest.newBuilder(URI.create(url)).header("Authorization", authorization).GET().build();
+
+            long start = System.nanoTime();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            long latency = System.nanoTime() - start;
+
+            if (response.statusCode() != 200) {
+                failures++;
+                continue;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+        if (failures > 0) {
+            System.err.println(failures + " requests failed");
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static void report(long[] latencies, int seconds) {
+        Arrays.sort(latencies);
+        System.out.printf("%,d requests, %,.0f req/s%n", latencies.length, latencies.length / (double) seconds);
+        System.out.printf("latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90),
+                percentile(latencies, 0.99), percentile(latencies, 1.0));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,48 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.LoadMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Times loading one large V1 text file with each {@link LoadMode}.
+ *
+ * Usage: LoadModeComparison [habits] [years]
+ */
+public final class LoadModeComparison {
+
+    private static final int ROUNDS = 5;
+
+    private LoadModeComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int habitCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempDirectory("microhabits-bench").resolve("habits.txt");
+        FileStorage storage = new FileStorage(file);
+        storage.save(SaveFormatComparison.generate(habitCount, years * 365));
+        System.out.printf("V1 file: %,d bytes%n", Files.size(file));
+
+        for (LoadMode mode : new LoadMode[]{LoadMode.STREAMING, LoadMode.MAPPED}) {
+            storage.setLoadMode(mode);
+            storage.load(); // warm-up
+
+            long best = Long.MAX_VALUE;
+            int habits = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                List<Habit> loaded = storage.load();
+                best = Math.min(best, System.nanoTime() - start);
+                habits = loaded.size();
+            }
+            System.out.printf("%-10s best of %d: %,6d ms (%d habits)%n", mode, ROUNDS, best / 1_000_000, habits);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.LoadMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads one large V1 text file with {@link LoadMode#PARALLEL} at 1, 2, 4 and 8 threads
+ * and reports the speed-up over the single-threaded run.
+ *
+ * Usage: ParallelLoadScaling [habits] [years]
+ */
+public final class ParallelLoadScaling {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int ROUNDS = 5;
+
+    private ParallelLoadScaling() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int habitCount = args.length > 0 ? Integer.parseInt(args[0]) : 4_000;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path file = Files.createTempDirectory("microhabits-bench").resolve("habits.txt");
+        FileStorage storage = new FileStorage(file);
+        storage.save(SaveFormatComparison.generate(habitCount, years * 365));
+        storage.setLoadMode(LoadMode.PARALLEL);
+
+        System.out.printf("V1 file: %,d bytes, %d cores available%n",
+                Files.size(file), Runtime.getRuntime().availableProcessors());
+
+        long baseline = 0;
+        for (int threads : THREADS) {
+            storage.setLoadThreads(threads);
+            storage.load(); // warm-up
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                storage.load();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            if (threads == 1) {
+                baseline = best;
+            }
+            System.out.printf("%d thread(s): %,6d ms  speed-up %.2fx%n",
+                    threads, best / 1_000_000, (double) baseline / best);
+        }
+    }
+}
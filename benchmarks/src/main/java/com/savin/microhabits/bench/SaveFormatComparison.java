@@ -0,0 +1,71 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Saves the same synthetic habits as V1 text and V2 binary and reports
+ * file size plus save and load times for each.
+ *
+ * Usage: SaveFormatComparison [habits] [years]
+ */
+public final class SaveFormatComparison {
+
+    private SaveFormatComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int habitCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<Habit> habits = generate(habitCount, years * 365);
+        Path dir = Files.createTempDirectory("microhabits-bench");
+
+        for (SaveFormat format : SaveFormat.values()) {
+            FileStorage storage = new FileStorage(dir.resolve(format.name().toLowerCase()), format);
+
+            long saveStart = System.nanoTime();
+            storage.save(habits);
+            long saveNanos = System.nanoTime() - saveStart;
+
+            storage.load(); // warm-up
+            long loadStart = System.nanoTime();
+            List<Habit> loaded = storage.load();
+            long loadNanos = System.nanoTime() - loadStart;
+
+            System.out.printf("%-9s %,14d bytes  save %,6d ms  load %,6d ms  (%d habits)%n",
+                    format, Files.size(dir.resolve(format.name().toLowerCase())),
+                    saveNanos / 1_000_000, loadNanos / 1_000_000, loaded.size());
+        }
+    }
+
+    // Mostly-daily completion with occasional missed or skipped days
+    static List<Habit> generate(int habitCount, int days) {
+        Random random = new Random(42);
+        long first = LocalDate.now().minusDays(days).toEpochDay();
+        List<Habit> habits = new ArrayList<>(habitCount);
+
+        for (int i = 0; i < habitCount; i++) {
+            Habit habit = new Habit("Habit " + i, "Synthetic habit #" + i);
+            for (int d = 0; d < days; d++) {
+                int roll = random.nextInt(20);
+                if (roll == 0) {
+                    habit.markCompletedEpochDay(first + d, false);
+                } else if (roll > 1) {
+                    habit.markCompletedEpochDay(first + d, true);
+                }
+            }
+            habits.add(habit);
+        }
+        return habits;
+    }
+}
@@ -0,0 +1,75 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HabitService lookups and today's completion toggle.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ServiceBenchmark {
+
+    private HabitService service;
+    private UUID[] ids;
+    private int next;
+    private boolean completed;
+
+    @Setup(Level.Trial)
+    public void setUp(HabitData data) {
+        service = new HabitService();
+        service.replaceAll(data.list.stream().map(Habit::copy).toList());
+
+        // Look up habits in random order so the benchmark is not just walking memory
+        Random random = new Random(7);
+        ids = new UUID[Math.min(4096, data.list.size())];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = data.list.get(random.nextInt(data.list.size())).getId();
+        }
+    }
+
+    private UUID nextId() {
+        if (++next == ids.length) {
+            next = 0;
+        }
+        return ids[next];
+    }
+
+    @Benchmark
+    public Optional<Habit> findById() {
+        return service.findById(nextId());
+    }
+
+    /** Cached after the first round through the IDs, as on every redraw of the list. */
+    @Benchmark
+    public Optional<HabitService.Stats> statsToday() {
+        return service.getStatsToday(nextId());
+    }
+
+    /** Includes copying the habit and publishing a new snapshot, as every UI click does. */
+    @Benchmark
+    public void markToday() {
+        completed = !completed;
+        service.markToday(nextId(), completed);
+    }
+}
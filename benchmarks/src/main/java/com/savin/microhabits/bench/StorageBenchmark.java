@@ -0,0 +1,92 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Save and load of the habit set through FileStorage, plus a save after one habit changed.
+ * Defaults to V2 and V3: a V1 file for 100k habits x 10 years runs to many gigabytes,
+ * so pass "-p format=V1_TEXT" with smaller sizes to compare.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StorageBenchmark {
+
+    @Param({"V2_BINARY", "V3_SEGMENTED"})
+    public SaveFormat format;
+
+    private Path dir;
+    private FileStorage storage;
+    private FileStorage lazyStorage;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(HabitData data) throws IOException {
+        dir = Files.createTempDirectory("microhabits-jmh");
+        Path file = dir.resolve("habits.dat");
+        storage = new FileStorage(file, format);
+        storage.save(data.list);
+
+        lazyStorage = new FileStorage(file, format);
+        lazyStorage.setLazyHistory(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public void save(HabitData data) throws IOException {
+        storage.save(data.list);
+    }
+
+    /** What the autosave does after a single edit; only V3 avoids writing every habit. */
+    @Benchmark
+    public void saveOneChanged(HabitData data) throws IOException {
+        next = (next + 1) % data.list.size();
+        storage.saveChanges(data.list, Set.of(data.list.get(next).getId()));
+    }
+
+    @Benchmark
+    public List<Habit> load() throws IOException {
+        return storage.load();
+    }
+
+    /** Startup path: summaries only, histories left undecoded (same as load for V1). */
+    @Benchmark
+    public List<Habit> loadLazy() throws IOException {
+        return lazyStorage.load();
+    }
+}
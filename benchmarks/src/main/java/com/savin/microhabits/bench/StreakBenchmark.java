@@ -0,0 +1,62 @@
+package com.savin.microhabits.bench;
+
+import com.savin.microhabits.model.Habit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streak queries on single habits, cycling through the whole set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreakBenchmark {
+
+    private LocalDate today;
+    private LocalDate monthAgo;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        today = LocalDate.now();
+        monthAgo = today.minusDays(30);
+    }
+
+    private Habit nextHabit(HabitData data) {
+        if (++next == data.list.size()) {
+            next = 0;
+        }
+        return data.list.get(next);
+    }
+
+    /** Today's streak, answered from the cached streak state. */
+    @Benchmark
+    public int streakToday(HabitData data) {
+        return nextHabit(data).getStreak(today);
+    }
+
+    /** Streak ending on an older date, which scans the history bits. */
+    @Benchmark
+    public int streakInPast(HabitData data) {
+        return nextHabit(data).getStreak(monthAgo);
+    }
+
+    @Benchmark
+    public int longestStreak(HabitData data) {
+        return nextHabit(data).getLongestStreak();
+    }
+}
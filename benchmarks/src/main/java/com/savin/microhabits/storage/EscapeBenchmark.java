@@ -0,0 +1,52 @@
+package com.savin.microhabits.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Field escaping used by the V1 text format and the journal.
+ * Lives in the storage package because escape and unescape are package-private.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EscapeBenchmark {
+
+    @Param({"plain", "special"})
+    public String text;
+
+    private String raw;
+    private String escaped;
+
+    @Setup
+    public void setUp() {
+        raw = text.equals("plain")
+                ? "Drink a glass of water after waking up"
+                : "Read 10 pages | notes\\ideas\nthen journal";
+        escaped = FileStorage.escape(raw);
+    }
+
+    @Benchmark
+    public String escape() {
+        return FileStorage.escape(raw);
+    }
+
+    @Benchmark
+    public String unescape() {
+        return FileStorage.unescape(escaped);
+    }
+}
@@ -1,12 +1,17 @@
 package com.savin.microhabits;
 
+import com.savin.microhabits.http.HabitHttpServer;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.service.AutoSaver;
 import com.savin.microhabits.service.HabitService;
 import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
 import com.savin.microhabits.ui.HomeView;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.io.IOException;
 import java.nio.file.Path;
 //Application entry point
 
@@ -16,11 +21,29 @@ public class Main extends Application {
     public void start(Stage stage) {
         HabitService habitService = new HabitService();
 
-        Path savePath = Path.of(System.getProperty("user.home"),
-                ".microhabits-coach", "habits.txt");
-        FileStorage storage = new FileStorage(savePath);
+        Path saveDir = Path.of(System.getProperty("user.home"), ".microhabits-coach");
+        FileStorage storage = new FileStorage(saveDir.resolve("habits.dat"), SaveFormat.V3_SEGMENTED);
+        // The home screen only needs streaks, so histories are decoded on demand
+        storage.setLazyHistory(true);
 
-        HomeView homeView = new HomeView(habitService, storage);
+        // One-time upgrade from the old text save file
+        try {
+            storage.upgradeFrom(saveDir.resolve("habits.txt"));
+        } catch (IOException ex) {
+            System.err.println("Could not upgrade habits.txt: " + ex.getMessage());
+        }
+
+        // Journal every change so a crash does not lose the session
+        try {
+            habitService.setJournal(storage.openJournal());
+        } catch (IOException ex) {
+            System.err.println("Journal unavailable: " + ex.getMessage());
+        }
+
+        // Saves in the background shortly after the user stops editing
+        AutoSaver autoSaver = new AutoSaver(habitService, storage, AutoSaver.DEFAULT_DELAY);
+
+        HomeView homeView = new HomeView(habitService, storage, autoSaver);
 
         Scene scene = new Scene(homeView.create(), 820, 560);
         scene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
@@ -31,13 +54,45 @@ public class Main extends Application {
         // Auto-load when the UI is ready
         homeView.loadOnStartup();
 
+        // Optional local JSON API, e.g. -Dmicrohabits.http.port=8765
+        HabitHttpServer httpServer = startHttpServer(habitService, saveDir.resolve("http.token"));
+
         // Auto-save when user closes the app
-        stage.setOnCloseRequest(e -> homeView.saveOnExit());
+        stage.setOnCloseRequest(e -> {
+            if (httpServer != null) {
+                httpServer.close();
+            }
+            homeView.saveOnExit();
+        });
 
         stage.show();
     }
 
+    private static HabitHttpServer startHttpServer(HabitService habitService, Path tokenFile) {
+        String port = System.getProperty("microhabits.http.port");
+        if (port == null) {
+            return null;
+        }
+        try {
+            HabitHttpServer server = new HabitHttpServer(habitService, Integer.parseInt(port));
+            // Clients read the token for this run from the file
+            server.writeToken(tokenFile);
+            server.start();
+            System.err.println("HTTP API on port " + server.getPort() + ", token in " + tokenFile);
+            return server;
+        } catch (IOException | NumberFormatException ex) {
+            System.err.println("HTTP API unavailable: " + ex.getMessage());
+            return null;
+        }
+    }
+
     public static void main(String[] args) {
+        Metrics.dumpAtExitIfEnabled();
+        // The HTTP API writes each response as a header and a body; with Nagle's algorithm on,
+        // the body waits for the client's delayed ACK, about 40 ms per request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
         launch(args);
     }
 }
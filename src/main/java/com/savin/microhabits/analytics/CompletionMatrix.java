@@ -0,0 +1,183 @@
+package com.savin.microhabits.analytics;
+
+import com.savin.microhabits.model.DayBitSet;
+import com.savin.microhabits.model.Habit;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Completion bits of many habits over one shared day range, one row of {@code long} words per habit
+ * in a single array. Every row starts at the same epoch day (a multiple of 64), so a day maps to the
+ * same word and bit in every row and range queries are popcounts over whole words.
+ * Days outside the range are always zero, so memory follows the range and not the oldest completion.
+ */
+public final class CompletionMatrix {
+
+    // Epoch day of bit 0 of each row's first word, at most 63 days before startDay
+    private final long firstDay;
+    private final long startDay;
+    private final long lastDay;
+    private final int wordsPerRow;
+    private final int rows;
+    private final long[] words;
+
+    // WEEKDAY_MASKS[phase][dow]: bits of a word whose bit 0 has weekday index phase that fall on weekday dow
+    private static final long[][] WEEKDAY_MASKS = new long[7][7];
+
+    static {
+        for (int phase = 0; phase < 7; phase++) {
+            for (int bit = 0; bit < 64; bit++) {
+                WEEKDAY_MASKS[phase][(phase + bit) % 7] |= 1L << bit;
+            }
+        }
+    }
+
+    private CompletionMatrix(long startDay, long lastDay, int rows) {
+        this.firstDay = startDay & ~63L;
+        this.startDay = startDay;
+        this.lastDay = lastDay;
+        this.rows = rows;
+        long perRow = ((lastDay - firstDay) >> 6) + 1;
+        if (perRow * rows > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Date range too large.");
+        }
+        this.wordsPerRow = (int) perRow;
+        this.words = new long[wordsPerRow * rows];
+    }
+
+    /**
+     * Builds the matrix for the habits, one row each in list order, covering the days from
+     * {@code firstDate} to {@code lastDate} inclusive. Rows are filled in parallel.
+     */
+    public static CompletionMatrix of(List<Habit> habits, LocalDate firstDate, LocalDate lastDate) {
+        long first = firstDate.toEpochDay();
+        long last = lastDate.toEpochDay();
+        if (first > last) {
+            throw new IllegalArgumentException("First date is after the last date.");
+        }
+
+        CompletionMatrix matrix = new CompletionMatrix(first, last, habits.size());
+        IntStream.range(0, habits.size()).parallel().forEach(row -> matrix.fill(row, habits.get(row)));
+        return matrix;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public LocalDate firstDate() {
+        return LocalDate.ofEpochDay(startDay);
+    }
+
+    public LocalDate lastDate() {
+        return LocalDate.ofEpochDay(lastDay);
+    }
+
+    /**
+     * Counts completed days of a row between two epoch days, both inclusive.
+     */
+    public int countCompleted(int row, long fromDay, long toDay) {
+        long from = Math.max(fromDay, firstDay) - firstDay;
+        long to = Math.min(toDay, lastDay) - firstDay;
+        if (from > to) {
+            return 0;
+        }
+
+        int base = row * wordsPerRow;
+        int first = (int) (from >> 6);
+        int last = (int) (to >> 6);
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (first == last) {
+            return Long.bitCount(words[base + first] & firstMask & lastMask);
+        }
+
+        int count = Long.bitCount(words[base + first] & firstMask);
+        for (int i = first + 1; i < last; i++) {
+            count += Long.bitCount(words[base + i]);
+        }
+        return count + Long.bitCount(words[base + last] & lastMask);
+    }
+
+    /**
+     * Adds the completed days of a row between two epoch days (inclusive) to
+     * {@code counts}, indexed by weekday from Monday (0) to Sunday (6).
+     */
+    public void addWeekdayCounts(int row, long fromDay, long toDay, int[] counts) {
+        long from = Math.max(fromDay, firstDay) - firstDay;
+        long to = Math.min(toDay, lastDay) - firstDay;
+        if (from > to) {
+            return;
+        }
+
+        int base = row * wordsPerRow;
+        int first = (int) (from >> 6);
+        int last = (int) (to >> 6);
+        // Each word is 64 days later than the one before, and 64 % 7 == 1
+        int phase = weekday(firstDay + ((long) first << 6));
+        for (int i = first; i <= last; i++) {
+            long w = words[base + i];
+            if (i == first) {
+                w &= -1L << from;
+            }
+            if (i == last) {
+                w &= -1L >>> (63 - (to & 63));
+            }
+            if (w != 0) {
+                long[] masks = WEEKDAY_MASKS[phase];
+                for (int dow = 0; dow < 7; dow++) {
+                    counts[dow] += Long.bitCount(w & masks[dow]);
+                }
+            }
+            phase = phase == 6 ? 0 : phase + 1;
+        }
+    }
+
+    /**
+     * Returns the longest run of completed days in a row within the range.
+     */
+    public int longestRun(int row) {
+        int base = row * wordsPerRow;
+        return DayBitSet.longestRun(words, base, base + wordsPerRow);
+    }
+
+    /**
+     * Returns the run of completed days in a row that ends on the last day of the range,
+     * counting back no further than its first day.
+     */
+    public int runEndingAtLastDay(int row) {
+        int base = row * wordsPerRow;
+        int word = wordsPerRow - 1;
+        int offset = (int) ((lastDay - firstDay) & 63);
+        // Move the last day's bit to the top so leading ones count backwards from it
+        int ones = Long.numberOfLeadingZeros(~(words[base + word] << (63 - offset)));
+        if (ones <= offset) {
+            return ones;
+        }
+
+        int run = offset + 1;
+        for (int i = word - 1; i >= 0; i--) {
+            long w = words[base + i];
+            if (w != -1L) {
+                return run + Long.numberOfLeadingZeros(~w);
+            }
+            run += 64;
+        }
+        return run;
+    }
+
+    private void fill(int row, Habit habit) {
+        int base = row * wordsPerRow;
+        habit.copyCompletedWords(firstDay, words, base, wordsPerRow);
+        // Drop completions before the first day and after the last day
+        words[base] &= -1L << (startDay - firstDay);
+        words[base + wordsPerRow - 1] &= -1L >>> (63 - ((lastDay - firstDay) & 63));
+    }
+
+    // Monday = 0; epoch day 0 was a Thursday
+    private static int weekday(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+}
@@ -0,0 +1,59 @@
+package com.savin.microhabits.analytics;
+
+import com.savin.microhabits.model.Habit;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Completion rates, streaks and weekday heatmaps for a list of habits.
+ * The last {@value #WINDOW_DAYS} days of every history are copied into a {@link CompletionMatrix}
+ * once, then every habit is summarised from its row in parallel.
+ *
+ * @param asOf          last day counted; later completions are ignored except in best streaks
+ * @param habits        one entry per habit, in the order given
+ * @param weekdayTotals completions in the last 52 weeks across all habits, Monday first
+ */
+public record CompletionReport(LocalDate asOf, List<HabitStats> habits, int[] weekdayTotals) {
+
+    // 52 whole weeks, so every weekday is counted the same number of times
+    private static final int HEATMAP_DAYS = 52 * 7;
+
+    // Longest range any figure reads from the matrix
+    static final int WINDOW_DAYS = 365;
+
+    public static CompletionReport of(List<Habit> habits, LocalDate asOf) {
+        CompletionMatrix matrix = CompletionMatrix.of(habits, asOf.minusDays(WINDOW_DAYS - 1), asOf);
+        long day = asOf.toEpochDay();
+
+        List<HabitStats> stats = IntStream.range(0, habits.size())
+                .parallel()
+                .mapToObj(row -> {
+                    Habit habit = habits.get(row);
+                    int[] weekdays = new int[7];
+                    matrix.addWeekdayCounts(row, day - HEATMAP_DAYS + 1, day, weekdays);
+                    // Only a streak as long as the window needs the full history
+                    int streak = matrix.runEndingAtLastDay(row);
+                    if (streak == WINDOW_DAYS) {
+                        streak = habit.getStreak(asOf);
+                    }
+                    return new HabitStats(habit.getId(), habit.getName(),
+                            rate(matrix, row, day, 7), rate(matrix, row, day, 30), rate(matrix, row, day, 365),
+                            streak, habit.getLongestStreak(), weekdays);
+                })
+                .toList();
+
+        int[] totals = new int[7];
+        for (HabitStats habit : stats) {
+            for (int dow = 0; dow < 7; dow++) {
+                totals[dow] += habit.weekdayCompletions()[dow];
+            }
+        }
+        return new CompletionReport(asOf, stats, totals);
+    }
+
+    private static double rate(CompletionMatrix matrix, int row, long day, int days) {
+        return matrix.countCompleted(row, day - days + 1, day) / (double) days;
+    }
+}
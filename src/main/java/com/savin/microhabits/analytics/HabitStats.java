@@ -0,0 +1,17 @@
+package com.savin.microhabits.analytics;
+
+import java.util.UUID;
+
+/**
+ * Completion figures of one habit as of a report's date.
+ *
+ * @param rate7              share of the last 7 days that were completed, 0 to 1
+ * @param rate30             share of the last 30 days
+ * @param rate365            share of the last 365 days
+ * @param currentStreak      completed days in a row ending on the report date
+ * @param bestStreak         longest run of completed days recorded for the habit
+ * @param weekdayCompletions completions in the last 52 weeks per weekday, Monday first
+ */
+public record HabitStats(UUID habitId, String name, double rate7, double rate30, double rate365,
+                         int currentStreak, int bestStreak, int[] weekdayCompletions) {
+}
@@ -0,0 +1,365 @@
+package com.savin.microhabits.cli;
+
+import com.savin.microhabits.analytics.CompletionReport;
+import com.savin.microhabits.analytics.HabitStats;
+import com.savin.microhabits.exchange.ExchangeFormat;
+import com.savin.microhabits.exchange.HabitExporter;
+import com.savin.microhabits.exchange.HabitImporter;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Headless entry point working on the same save file as the desktop app.
+ * Uses only the model, service and storage packages, so it runs without JavaFX.
+ * Changes go through the journal, like in the app, and are flushed before exit.
+ *
+ * Usage: HabitCli [--file path] command [args...]
+ * <pre>
+ * add name [description]    creates a habit
+ * mark habit [done|undone]  sets today's status; habit is an ID or an exact name
+ * import file               adds the habits of another save file (any format), leaving it untouched
+ * import-data file [format]  adds or updates habits and history from CSV or JSON Lines ("-" = stdin)
+ * export-data file [format]  writes all habits and history as CSV or JSON Lines ("-" = stdout)
+ * stats                     prints streaks and the last completion of every habit
+ * report                    prints 7/30/365-day completion rates, best streaks and a weekday heatmap
+ * compact                   folds the journal into the save file
+ * batch                     runs one command per line from stdin, e.g. "mark Read done"
+ * </pre>
+ * Batch arguments are separated by tabs if the line has any, otherwise by spaces.
+ * In a batch, import-data runs between the lines around it rather than inside their HabitService batch,
+ * and must read a file.
+ * The data format is csv or jsonl and defaults to the file's extension.
+ */
+public final class HabitCli {
+
+    // Batch lines applied per HabitService batch, so listeners and snapshots are not rebuilt per line
+    private static final int BATCH_LINES = 10_000;
+
+    private final HabitService service;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    // First habit per name, built on the first lookup by name so batches do not scan the list per line
+    private Map<String, UUID> nameIndex;
+
+    HabitCli(HabitService service, PrintStream out, PrintStream err) {
+        this.service = service;
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        Metrics.dumpAtExitIfEnabled();
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        Path saveDir = Path.of(System.getProperty("user.home"), ".microhabits-coach");
+        Path file = saveDir.resolve("habits.dat");
+
+        if (rest.size() >= 2 && rest.get(0).equals("--file")) {
+            file = Path.of(rest.get(1));
+            rest = rest.subList(2, rest.size());
+        }
+        if (rest.isEmpty()) {
+            usage();
+            System.exit(2);
+        }
+
+        FileStorage storage = new FileStorage(file, SaveFormat.V3_SEGMENTED);
+        storage.setLazyHistory(true);
+        HabitService service = new HabitService();
+
+        int status;
+        try {
+            if (file.equals(saveDir.resolve("habits.dat"))) {
+                storage.upgradeFrom(saveDir.resolve("habits.txt"));
+            }
+            service.replaceAll(storage.load());
+            service.setJournal(storage.openJournal());
+
+            HabitCli cli = new HabitCli(service, System.out, System.err);
+            status = cli.run(rest.get(0), rest.subList(1, rest.size())) ? 0 : 1;
+        } catch (IOException ex) {
+            System.err.println("Failed: " + ex.getMessage());
+            status = 1;
+        } finally {
+            try {
+                storage.closeJournal();
+            } catch (IOException ex) {
+                System.err.println("Journal flush failed: " + ex.getMessage());
+                status = 1;
+                // The changes are still in memory; write them all to the save file instead
+                try {
+                    storage.save(service.getHabitsReadOnly());
+                } catch (IOException saveEx) {
+                    System.err.println("Save failed: " + saveEx.getMessage());
+                }
+            }
+        }
+        System.exit(status);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: HabitCli [--file path] add|mark|import|import-data|export-data|stats|report|compact|batch [args...]");
+    }
+
+    /**
+     * Runs one command. Returns false if it failed; the reason is printed to err.
+     */
+    boolean run(String command, List<String> args) throws IOException {
+        if (command.equals("batch")) {
+            return runBatch(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        }
+        try {
+            execute(command, args);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            err.println(command + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs every line as a command, continuing after failures. Blank lines and # comments are skipped.
+     * Returns false if any line failed; each failure is printed to err with its line number.
+     */
+    boolean runBatch(BufferedReader in) throws IOException {
+        int[] failed = {0};
+        int[] lineNumber = {0};
+        List<String> chunk = new ArrayList<>(BATCH_LINES);
+
+        String line;
+        do {
+            line = in.readLine();
+            // import-data applies its rows from another thread, which would wait forever on this batch's lock
+            boolean outsideBatch = line != null && command(line).equals("import-data");
+            if (line != null && !outsideBatch) {
+                chunk.add(line);
+            }
+            if (chunk.size() == BATCH_LINES || ((line == null || outsideBatch) && !chunk.isEmpty())) {
+                service.batch(() -> {
+                    for (String text : chunk) {
+                        lineNumber[0]++;
+                        if (!runLine(text, lineNumber[0])) {
+                            failed[0]++;
+                        }
+                    }
+                });
+                chunk.clear();
+            }
+            if (outsideBatch) {
+                lineNumber[0]++;
+                if (!runLine(line, lineNumber[0])) {
+                    failed[0]++;
+                }
+            }
+        } while (line != null);
+
+        err.println("batch: " + lineNumber[0] + " lines, " + failed[0] + " failed");
+        return failed[0] == 0;
+    }
+
+    private boolean runLine(String text, int lineNumber) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return true;
+        }
+
+        String[] parts = split(trimmed);
+        String command = parts[0];
+        try {
+            if (command.equals("batch")) {
+                throw new IllegalArgumentException("Batches cannot be nested.");
+            }
+            if (command.equals("import-data") && parts.length > 1 && parts[1].equals("-")) {
+                throw new IllegalArgumentException("import-data cannot read stdin in a batch, which already reads it.");
+            }
+            execute(command, Arrays.asList(parts).subList(1, parts.length));
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            // Any failure stays on its line, so the rest of the batch still runs and the exit status shows it
+            err.println("line " + lineNumber + ": " + (ex.getMessage() != null ? ex.getMessage() : ex.toString()));
+            return false;
+        }
+    }
+
+    private static String[] split(String trimmed) {
+        return trimmed.indexOf('\t') >= 0 ? trimmed.split("\t") : trimmed.split(" +");
+    }
+
+    private static String command(String line) {
+        return split(line.trim())[0];
+    }
+
+    private void execute(String command, List<String> args) throws IOException {
+        switch (command) {
+            case "add" -> {
+                requireArgs(args, 1, 2, "add name [description]");
+                Habit habit = service.addHabit(args.get(0), args.size() > 1 ? args.get(1) : "");
+                if (nameIndex != null) {
+                    nameIndex.putIfAbsent(habit.getName(), habit.getId());
+                }
+                out.println(habit.getId());
+            }
+            case "mark" -> {
+                requireArgs(args, 1, 2, "mark habit [done|undone]");
+                boolean done = args.size() < 2 || parseStatus(args.get(1));
+                service.markToday(resolve(args.get(0)).getId(), done);
+            }
+            case "import" -> {
+                requireArgs(args, 1, 1, "import file");
+                List<Habit> imported = new FileStorage(Path.of(args.get(0))).loadReadOnly();
+                service.importHabits(imported);
+                nameIndex = null;
+                out.println("Imported " + imported.size() + " habits.");
+            }
+            case "import-data" -> {
+                requireArgs(args, 1, 2, "import-data file|- [csv|jsonl]");
+                importData(args.get(0), dataFormat(args));
+                nameIndex = null;
+            }
+            case "export-data" -> {
+                requireArgs(args, 1, 2, "export-data file|- [csv|jsonl]");
+                exportData(args.get(0), dataFormat(args));
+            }
+            case "stats" -> {
+                requireArgs(args, 0, 0, "stats");
+                printStats();
+            }
+            case "report" -> {
+                requireArgs(args, 0, 0, "report");
+                printReport();
+            }
+            case "compact" -> {
+                requireArgs(args, 0, 0, "compact");
+                service.compactJournal();
+            }
+            default -> throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    private static ExchangeFormat dataFormat(List<String> args) {
+        if (args.size() > 1) {
+            return ExchangeFormat.of(args.get(1));
+        }
+        if (args.get(0).equals("-")) {
+            throw new IllegalArgumentException("Give the format (csv or jsonl) when using stdin or stdout.");
+        }
+        return ExchangeFormat.of(args.get(0));
+    }
+
+    private void importData(String file, ExchangeFormat format) throws IOException {
+        HabitImporter.Result result;
+        try (Reader in = file.equals("-")
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+            result = new HabitImporter(service).importFrom(in, format);
+        }
+        double seconds = result.nanos() / 1e9;
+        err.printf("import-data: %d rows (%d habits, %d statuses, %d failed) in %.2f s, %.0f rows/s, %.1f MB/s%n",
+                result.rows(), result.habits(), result.statuses(), result.failed(), seconds,
+                result.rowsPerSecond(), seconds == 0 ? 0 : result.chars() / 1e6 / seconds);
+        for (String error : result.errors()) {
+            err.println(error);
+        }
+        if (result.failed() > result.errors().size()) {
+            err.println("... " + (result.failed() - result.errors().size()) + " more");
+        }
+    }
+
+    private void exportData(String file, ExchangeFormat format) throws IOException {
+        long start = System.nanoTime();
+        long rows;
+        if (file.equals("-")) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            rows = HabitExporter.export(service.getHabitsReadOnly(), format, writer);
+        } else {
+            try (Writer writer = Files.newBufferedWriter(Path.of(file), StandardCharsets.UTF_8)) {
+                rows = HabitExporter.export(service.getHabitsReadOnly(), format, writer);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        err.printf("export-data: %d rows in %.2f s, %.0f rows/s%n", rows, seconds, seconds == 0 ? 0 : rows / seconds);
+    }
+
+    private void printStats() {
+        for (Habit habit : service.getHabitsReadOnly()) {
+            out.printf("%s  %-40s  streak %4d  longest %4d  last %s%n",
+                    habit.getId(), habit.getName(), habit.getStreakToday(), habit.getLongestStreak(),
+                    habit.getLastCompletedDate().map(Object::toString).orElse("-"));
+        }
+    }
+
+    private void printReport() {
+        CompletionReport report = CompletionReport.of(service.getHabitsReadOnly(), LocalDate.now());
+        for (HabitStats habit : report.habits()) {
+            out.printf("%s  %-40s  7d %3.0f%%  30d %3.0f%%  365d %3.0f%%  best %4d%n",
+                    habit.habitId(), habit.name(), habit.rate7() * 100, habit.rate30() * 100,
+                    habit.rate365() * 100, habit.bestStreak());
+        }
+        StringBuilder weekdays = new StringBuilder("Completions in the last 52 weeks:");
+        for (DayOfWeek day : DayOfWeek.values()) {
+            weekdays.append("  ").append(day.getDisplayName(TextStyle.SHORT, Locale.ENGLISH))
+                    .append(' ').append(report.weekdayTotals()[day.ordinal()]);
+        }
+        out.println(weekdays);
+    }
+
+    // Accepts an ID or an exact habit name
+    private Habit resolve(String ref) {
+        try {
+            UUID id = UUID.fromString(ref);
+            return service.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Habit not found."));
+        } catch (IllegalArgumentException notAnId) {
+            if (nameIndex == null) {
+                nameIndex = new HashMap<>();
+                for (Habit habit : service.getHabitsReadOnly()) {
+                    nameIndex.putIfAbsent(habit.getName(), habit.getId());
+                }
+            }
+            UUID id = nameIndex.get(ref);
+            if (id == null) {
+                throw new IllegalArgumentException("Habit not found: " + ref);
+            }
+            return service.findById(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Habit not found: " + ref));
+        }
+    }
+
+    private static boolean parseStatus(String value) {
+        return switch (value) {
+            case "done", "1", "yes" -> true;
+            case "undone", "0", "no" -> false;
+            default -> throw new IllegalArgumentException("Status must be done or undone: " + value);
+        };
+    }
+
+    private static void requireArgs(List<String> args, int min, int max, String usage) {
+        if (args.size() < min || args.size() > max) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+}
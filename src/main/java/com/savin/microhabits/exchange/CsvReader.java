@@ -0,0 +1,143 @@
+package com.savin.microhabits.exchange;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV records: fields separated by commas, optionally quoted with doubled quotes
+ * inside, records ending in LF or CRLF. Quoted fields may span lines.
+ * A field longer than the limit, usually an unterminated quote, fails its record instead of
+ * taking in the rest of the input.
+ */
+final class CsvReader {
+
+    static final int DEFAULT_MAX_FIELD_CHARS = 1 << 20;
+
+    private final Reader in;
+    private final int maxFieldChars;
+    private final char[] buffer = new char[64 * 1024];
+    private int pos;
+    private int limit;
+    private long charsRead;
+
+    // Line numbers are 1-based; recordLine is where the last record started
+    private long line = 1;
+    private long recordLine;
+
+    private final StringBuilder field = new StringBuilder(64);
+
+    CsvReader(Reader in) {
+        this(in, DEFAULT_MAX_FIELD_CHARS);
+    }
+
+    CsvReader(Reader in, int maxFieldChars) {
+        this.in = in;
+        this.maxFieldChars = maxFieldChars;
+    }
+
+    /**
+     * Reads the next record into {@code fields}. Returns false at the end of the input.
+     * A field over the length limit throws IllegalArgumentException after skipping to the end
+     * of the line it reached, so the next call reads the record after it.
+     */
+    boolean next(List<String> fields) throws IOException {
+        fields.clear();
+        if (!fill()) {
+            return false;
+        }
+        recordLine = line;
+
+        while (true) {
+            field.setLength(0);
+            boolean quoted = fill() && buffer[pos] == '"';
+            if (quoted) {
+                pos++;
+                readQuoted();
+            }
+            // Plain field, or whatever follows a closing quote
+            while (fill()) {
+                char c = buffer[pos];
+                if (c == ',' || c == '\n' || c == '\r') {
+                    break;
+                }
+                checkLength();
+                field.append(c);
+                pos++;
+            }
+            fields.add(field.isEmpty() ? "" : field.toString());
+
+            if (!fill()) {
+                return true;
+            }
+            char c = buffer[pos++];
+            if (c == '\r' && fill() && buffer[pos] == '\n') {
+                pos++;
+            }
+            if (c != ',') {
+                line++;
+                return true;
+            }
+        }
+    }
+
+    long recordLine() {
+        return recordLine;
+    }
+
+    long charsRead() {
+        return charsRead;
+    }
+
+    private void readQuoted() throws IOException {
+        while (fill()) {
+            char c = buffer[pos++];
+            if (c == '"') {
+                if (fill() && buffer[pos] == '"') {
+                    field.append('"');
+                    pos++;
+                } else {
+                    return;
+                }
+            } else {
+                if (c == '\n') {
+                    line++;
+                }
+                checkLength();
+                field.append(c);
+            }
+        }
+    }
+
+    private void checkLength() throws IOException {
+        if (field.length() < maxFieldChars) {
+            return;
+        }
+        field.setLength(0);
+        while (fill()) {
+            if (buffer[pos++] == '\n') {
+                line++;
+                break;
+            }
+        }
+        throw new IllegalArgumentException("Field longer than " + maxFieldChars + " characters, unterminated quote?");
+    }
+
+    // Makes sure at least one char is buffered; false at the end of the input
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        int n = in.read(buffer);
+        while (n == 0) {
+            n = in.read(buffer);
+        }
+        if (n < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        charsRead += n;
+        return true;
+    }
+}
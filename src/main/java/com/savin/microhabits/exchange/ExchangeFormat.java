@@ -0,0 +1,36 @@
+package com.savin.microhabits.exchange;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Text formats for moving habits and their history in and out of other tools.
+ * Both hold one row per habit (id, name, description) and one row per recorded day
+ * (id, date, completed); a habit's row comes before the rows of its days.
+ */
+public enum ExchangeFormat {
+
+    /** Header "id,name,description,date,completed"; day rows leave name and description empty. */
+    CSV,
+
+    /** One JSON object per line: {"id","name","description"} or {"id","date","completed"}. */
+    JSON_LINES;
+
+    /**
+     * Picks the format from a file extension (.csv, .jsonl or .ndjson) or a name ("csv", "jsonl").
+     */
+    public static ExchangeFormat of(String nameOrPath) {
+        String lower = nameOrPath.toLowerCase(Locale.ROOT);
+        if (lower.equals("csv") || lower.endsWith(".csv")) {
+            return CSV;
+        }
+        if (lower.equals("jsonl") || lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) {
+            return JSON_LINES;
+        }
+        throw new IllegalArgumentException("Unknown format, use .csv or .jsonl: " + nameOrPath);
+    }
+
+    public static ExchangeFormat of(Path file) {
+        return of(file.getFileName().toString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.savin.microhabits.exchange;
+
+import com.savin.microhabits.model.Habit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Streams habits and their recorded days as CSV or JSON Lines.
+ * Rows are written as the histories are walked, so nothing but the habits themselves is held in memory.
+ */
+public final class HabitExporter {
+
+    static final String CSV_HEADER = "id,name,description,date,completed";
+
+    private HabitExporter() {
+    }
+
+    /**
+     * Writes every habit followed by its recorded days and flushes. Returns the number of rows written.
+     */
+    public static long export(List<Habit> habits, ExchangeFormat format, Writer out) throws IOException {
+        long[] rows = {0};
+        StringBuilder line = new StringBuilder(128);
+        if (format == ExchangeFormat.CSV) {
+            out.write(CSV_HEADER);
+            out.write('\n');
+        }
+
+        try {
+            for (Habit habit : habits) {
+                String id = habit.getId().toString();
+                line.setLength(0);
+                if (format == ExchangeFormat.CSV) {
+                    line.append(id).append(',');
+                    appendCsv(line, habit.getName()).append(',');
+                    appendCsv(line, habit.getDescription()).append(",,\n");
+                } else {
+                    line.append("{\"id\":\"").append(id).append("\",\"name\":");
+                    appendJson(line, habit.getName()).append(",\"description\":");
+                    appendJson(line, habit.getDescription()).append("}\n");
+                }
+                out.append(line);
+                rows[0]++;
+
+                habit.forEachDay((day, completed) -> {
+                    line.setLength(0);
+                    if (format == ExchangeFormat.CSV) {
+                        line.append(id).append(",,,").append(LocalDate.ofEpochDay(day))
+                                .append(completed ? ",true\n" : ",false\n");
+                    } else {
+                        line.append("{\"id\":\"").append(id).append("\",\"date\":\"").append(LocalDate.ofEpochDay(day))
+                                .append(completed ? "\",\"completed\":true}\n" : "\",\"completed\":false}\n");
+                    }
+                    try {
+                        out.append(line);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    rows[0]++;
+                });
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        out.flush();
+        return rows[0];
+    }
+
+    // Quotes the field only if it contains a separator, quote or line break
+    private static StringBuilder appendCsv(StringBuilder sb, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    private static StringBuilder appendJson(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"');
+    }
+}
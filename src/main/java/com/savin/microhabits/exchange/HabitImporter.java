@@ -0,0 +1,426 @@
+package com.savin.microhabits.exchange;
+
+import com.savin.microhabits.model.DayBitSet;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports habits and their history from CSV or JSON Lines into a {@link HabitService}.
+ *
+ * The calling thread parses rows into batches and hands them over a small bounded queue to an
+ * applier thread, which groups each batch per habit and applies it with one
+ * {@link HabitService#applyUpdates} call. Parsing and applying overlap, and memory stays at a few
+ * batches however large the input is.
+ *
+ * A row with a name creates or renames a habit; a row with a date sets that day's status.
+ * A habit's day rows must come after the row that creates it unless it already exists.
+ * Bad rows are counted and skipped; the first few are described in {@link Result#errors()}.
+ */
+public final class HabitImporter {
+
+    public static final int DEFAULT_BATCH_ROWS = 16_384;
+
+    // Batches waiting for the applier; with the one being parsed and the one being applied this bounds memory
+    private static final int QUEUED_BATCHES = 4;
+
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    private static final List<Row> END = List.of();
+
+    private final HabitService service;
+    private final int batchRows;
+
+    /**
+     * Outcome of an import.
+     *
+     * @param rows     data rows read, not counting the CSV header and blank lines
+     * @param habits   habits created or updated by a row with a name
+     * @param statuses day statuses set
+     * @param failed   rows skipped because they were invalid or their habit no longer exists
+     * @param errors   descriptions of the first skipped rows, with line numbers
+     * @param chars    characters read
+     * @param nanos    time taken
+     */
+    public record Result(long rows, long habits, long statuses, long failed, List<String> errors,
+                         long chars, long nanos) {
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+    }
+
+    // One parsed row; name is null when the row has no details, day is NO_DAY when it has no status
+    private record Row(long line, UUID id, String name, String description, long day, boolean completed) {}
+
+    public HabitImporter(HabitService service) {
+        this(service, DEFAULT_BATCH_ROWS);
+    }
+
+    public HabitImporter(HabitService service, int batchRows) {
+        if (batchRows < 1) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.service = service;
+        this.batchRows = batchRows;
+    }
+
+    /**
+     * Reads the whole input and applies it. Rows applied before a failure stay applied.
+     */
+    public Result importFrom(Reader in, ExchangeFormat format) throws IOException {
+        long start = System.nanoTime();
+        Run run = new Run();
+        Thread applier = Thread.ofPlatform().name("habit-import").start(run::applyAll);
+
+        long chars;
+        boolean finished = false;
+        try {
+            chars = format == ExchangeFormat.CSV ? parseCsv(in, run) : parseJsonLines(in, run);
+            finished = true;
+        } finally {
+            if (finished) {
+                run.put(END);
+            } else {
+                // Stop the applier without waiting for the batches still queued
+                run.cancelled = true;
+                run.queue.clear();
+                run.queue.offer(END);
+            }
+            joinUninterruptibly(applier);
+        }
+
+        Throwable failure = run.failure.get();
+        if (failure instanceof RuntimeException ex) {
+            throw ex;
+        }
+        if (failure != null) {
+            throw (Error) failure;
+        }
+        return new Result(run.rows, run.habits, run.statuses, run.failed, List.copyOf(run.errors),
+                chars, System.nanoTime() - start);
+    }
+
+    private long parseCsv(Reader in, Run run) throws IOException {
+        CsvReader csv = new CsvReader(in);
+        List<String> fields = new ArrayList<>();
+        if (!csv.next(fields)) {
+            return 0;
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            columns.putIfAbsent(fields.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        int idColumn = columns.getOrDefault("id", -1);
+        if (idColumn < 0) {
+            throw new IllegalArgumentException("CSV header must have an id column.");
+        }
+        int nameColumn = columns.getOrDefault("name", -1);
+        int descriptionColumn = columns.getOrDefault("description", -1);
+        int dateColumn = columns.getOrDefault("date", -1);
+        int completedColumn = columns.getOrDefault("completed", -1);
+
+        while (true) {
+            try {
+                if (!csv.next(fields)) {
+                    break;
+                }
+            } catch (IllegalArgumentException ex) {
+                // The reader skipped the rest of the line, so the next record still parses
+                run.rows++;
+                run.fail(csv.recordLine(), ex.getMessage());
+                continue;
+            }
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            long line = csv.recordLine();
+            run.rows++;
+            try {
+                run.add(row(run, line, field(fields, idColumn), field(fields, nameColumn),
+                        field(fields, descriptionColumn), field(fields, dateColumn), field(fields, completedColumn)));
+            } catch (IllegalArgumentException | DateTimeException ex) {
+                run.fail(line, ex.getMessage());
+            }
+        }
+        return csv.charsRead();
+    }
+
+    private long parseJsonLines(Reader in, Run run) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in, 64 * 1024);
+        JsonLine json = new JsonLine();
+        long chars = 0;
+        long line = 0;
+
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            chars += text.length() + 1;
+            if (text.isBlank()) {
+                continue;
+            }
+            run.rows++;
+            try {
+                Map<String, String> values = json.parse(text);
+                run.add(row(run, line, values.get("id"), values.get("name"), values.get("description"),
+                        values.get("date"), values.get("completed")));
+            } catch (IllegalArgumentException | DateTimeException ex) {
+                run.fail(line, ex.getMessage());
+            }
+        }
+        return chars;
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column) : "";
+    }
+
+    private static Row row(Run run, long line, String idText, String name, String description, String date, String completed) {
+        if (idText == null || idText.isEmpty()) {
+            throw new IllegalArgumentException("Missing id.");
+        }
+        UUID id = run.parseId(idText);
+        boolean hasDetails = name != null && !name.isEmpty();
+        boolean hasDay = date != null && !date.isEmpty();
+        if (!hasDetails && !hasDay) {
+            throw new IllegalArgumentException("Row needs a name or a date.");
+        }
+
+        String desc = description == null ? "" : description;
+        if (hasDetails) {
+            // Validates name and description the same way the service will
+            Habit checked = new Habit(id, name, desc);
+            name = checked.getName();
+            desc = checked.getDescription();
+        }
+        long day = hasDay ? parseDay(date) : NO_DAY;
+        boolean done = hasDay && parseCompleted(completed);
+        return new Row(line, id, hasDetails ? name : null, desc, day, done);
+    }
+
+    // yyyy-MM-dd without going through a formatter
+    static long parseDay(String text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            throw new IllegalArgumentException("Invalid date, expected yyyy-MM-dd: " + text);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            throw new IllegalArgumentException("Invalid date, expected yyyy-MM-dd: " + text);
+        }
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static boolean parseCompleted(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing completed.");
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "true", "1", "yes" -> true;
+            case "false", "0", "no" -> false;
+            default -> throw new IllegalArgumentException("Completed must be true or false: " + value);
+        };
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Changes to one habit collected from a batch
+    private static final class Staged {
+        final long firstLine;
+        int rows;
+        int nameRows;
+        int statusRows;
+        String name;
+        String description;
+        final DayBitSet statuses = new DayBitSet();
+
+        Staged(long firstLine) {
+            this.firstLine = firstLine;
+        }
+    }
+
+    // State of one import, shared by the parsing thread and the applier
+    private final class Run {
+        final BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        volatile boolean cancelled;
+
+        // Written by the parser
+        List<Row> batch = new ArrayList<>(batchRows);
+        long rows;
+
+        // Day rows of one habit are usually consecutive, so the last ID is kept
+        private String lastIdText;
+        private UUID lastId;
+
+        // Written by both threads, read after the applier has finished
+        private final List<String> errors = new ArrayList<>();
+        private long failed;
+
+        // Written by the applier
+        long habits;
+        long statuses;
+        final Set<UUID> known = new HashSet<>();
+
+        void add(Row row) throws InterruptedIOException {
+            batch.add(row);
+            if (batch.size() == batchRows) {
+                put(batch);
+                batch = new ArrayList<>(batchRows);
+            }
+        }
+
+        void put(List<Row> rows) throws InterruptedIOException {
+            if (rows == END && !batch.isEmpty()) {
+                put(batch);
+                batch = new ArrayList<>(batchRows);
+            }
+            if (failure.get() != null) {
+                // The applier has stopped; only the end marker still matters
+                queue.clear();
+                if (rows != END) {
+                    return;
+                }
+            }
+            try {
+                queue.put(rows);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted.");
+            }
+        }
+
+        UUID parseId(String text) {
+            if (!text.equals(lastIdText)) {
+                try {
+                    lastId = UUID.fromString(text);
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Invalid id: " + text);
+                }
+                lastIdText = text;
+            }
+            return lastId;
+        }
+
+        void fail(long line, String message) {
+            fail(line, message, 1);
+        }
+
+        synchronized void fail(long line, String message, int rowCount) {
+            failed += rowCount;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + line + ": " + message);
+            }
+        }
+
+        void applyAll() {
+            try {
+                List<Row> next;
+                while ((next = queue.take()) != END) {
+                    if (cancelled || failure.get() != null) {
+                        // Keep taking batches so the parser is never left blocked on a full queue
+                        continue;
+                    }
+                    try {
+                        apply(next);
+                    } catch (RuntimeException | Error ex) {
+                        failure.set(ex);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void apply(List<Row> rows) {
+            Map<UUID, Staged> staged = new LinkedHashMap<>();
+            for (Row row : rows) {
+                UUID id = row.id();
+                if (row.name() != null) {
+                    known.add(id);
+                } else if (!known.contains(id)) {
+                    if (service.findById(id).isEmpty()) {
+                        fail(row.line(), "Habit not found: " + id);
+                        continue;
+                    }
+                    known.add(id);
+                }
+
+                Staged habit = staged.computeIfAbsent(id, k -> new Staged(row.line()));
+                habit.rows++;
+                if (row.name() != null) {
+                    habit.name = row.name();
+                    habit.description = row.description();
+                    habit.nameRows++;
+                }
+                if (row.day() != NO_DAY) {
+                    habit.statuses.set(row.day(), row.completed());
+                    habit.statusRows++;
+                }
+            }
+
+            List<HabitService.Update> updates = new ArrayList<>(staged.size());
+            staged.forEach((id, habit) -> updates.add(
+                    new HabitService.Update(id, habit.name, habit.description, habit.statuses)));
+            // The check above ran outside the service's lock; a habit removed since is skipped there
+            Set<UUID> skipped = service.applyUpdates(updates);
+
+            staged.forEach((id, habit) -> {
+                if (skipped.contains(id)) {
+                    known.remove(id);
+                    fail(habit.firstLine, "Habit not found: " + id, habit.rows);
+                } else {
+                    habits += habit.nameRows;
+                    statuses += habit.statusRows;
+                }
+            });
+        }
+    }
+}
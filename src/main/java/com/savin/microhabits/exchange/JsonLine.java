@@ -0,0 +1,171 @@
+package com.savin.microhabits.exchange;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses one line of JSON Lines holding a flat object. String values are unescaped;
+ * numbers, true, false and null are kept as their text ({@code null} becomes a Java null);
+ * {@link #isLiteral} tells them from strings with the same text.
+ * Nested objects and arrays are rejected. Also reads the request bodies of the HTTP API.
+ */
+public final class JsonLine {
+
+    private final Map<String, String> values = new HashMap<>();
+    private final Set<String> literals = new HashSet<>();
+    private final StringBuilder sb = new StringBuilder(64);
+    private String text;
+    private int pos;
+
+    /**
+     * Parses a line and returns its members; the map is reused by the next call.
+     */
+    public Map<String, String> parse(String line) {
+        values.clear();
+        literals.clear();
+        text = line;
+        pos = 0;
+
+        skipSpace();
+        expect('{');
+        skipSpace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipSpace();
+                String key = readString();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                if (peek() == '"') {
+                    literals.remove(key);
+                } else {
+                    literals.add(key);
+                }
+                values.put(key, readValue());
+                skipSpace();
+                char c = next();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw error("expected , or }");
+                }
+            }
+        }
+        skipSpace();
+        if (pos < text.length()) {
+            throw error("unexpected text after the object");
+        }
+        return values;
+    }
+
+    /**
+     * Returns true if the key's value in the last parsed line was a number, true, false or null
+     * rather than a string, e.g. to tell {@code true} from {@code "true"}.
+     */
+    public boolean isLiteral(String key) {
+        return literals.contains(key);
+    }
+
+    private String readValue() {
+        char c = peek();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            throw error("nested values are not supported");
+        }
+        int start = pos;
+        while (pos < text.length() && ",} \t\r".indexOf(text.charAt(pos)) < 0) {
+            pos++;
+        }
+        String literal = text.substring(start, pos);
+        if (literal.isEmpty()) {
+            throw error("missing value");
+        }
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String readString() {
+        expect('"');
+        int start = pos;
+        // Fast path: no escapes
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                return text.substring(start, pos++);
+            }
+            if (c == '\\') {
+                break;
+            }
+            pos++;
+        }
+
+        sb.setLength(0);
+        sb.append(text, start, pos);
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = next();
+            switch (e) {
+                case '"', '\\', '/' -> sb.append(e);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (pos + 4 > text.length()) {
+                        throw error("bad \\u escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("bad \\u escape");
+                    }
+                    pos += 4;
+                }
+                default -> throw error("bad escape \\" + e);
+            }
+        }
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= text.length()) {
+            throw error("unexpected end of line");
+        }
+        return text.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw error("expected " + c);
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid JSON at column " + (pos + 1) + ": " + message);
+    }
+}
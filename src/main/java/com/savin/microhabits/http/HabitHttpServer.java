@@ -0,0 +1,307 @@
+package com.savin.microhabits.http;
+
+import com.savin.microhabits.exchange.JsonLine;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small JSON API over a {@link HabitService}, for other tools on the same machine.
+ * Binds to the loopback address only and handles every request on its own virtual thread.
+ * Reads use the service's lock-free snapshots, so readers never wait for writers.
+ *
+ * Every request must carry {@code Authorization: Bearer <token>} with the token generated for
+ * this run, a loopback Host header and no Origin other than the server's own, so web pages
+ * open in a browser can neither change habits (CSRF) nor read them through DNS rebinding.
+ * POST bodies are JSON objects sent as {@code application/json}.
+ *
+ * <pre>
+ * GET  /habits                          all habits with today's streak
+ * GET  /habits/{id}                     one habit
+ * GET  /habits/{id}/streak[?date=...]   streak ending on a date (default today)
+ * POST /habits                          {"name":...,"description":...} creates a habit
+ * POST /habits/{id}/mark                {"done":false} sets today's status; done is true or false, default true
+ * GET  /metrics                         counters and latency histograms as plain text
+ * </pre>
+ *
+ * Responses are written as a header and a body; start the JVM with
+ * {@code -Dsun.net.httpserver.nodelay=true}, as {@code Main} does, or Nagle's algorithm holds
+ * each body back until the client's delayed ACK, about 40 ms per request.
+ */
+public final class HabitHttpServer implements AutoCloseable {
+
+    // Larger bodies are rejected before parsing
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private final HabitService habitService;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final String token;
+    private final byte[] expectedAuthorization;
+
+    /**
+     * Creates the server on the loopback interface with a new random token; port 0 picks a free port.
+     */
+    public HabitHttpServer(HabitService habitService, int port) throws IOException {
+        this.habitService = habitService;
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        this.expectedAuthorization = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/habits", this::handle);
+        server.createContext("/metrics", this::handleMetrics);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the token clients must send as {@code Authorization: Bearer <token>}.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Writes the token to a file only the current user can read, replacing an older one.
+     */
+    public void writeToken(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.writeString(file, token + "\n", StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!allowed(exchange)) {
+                return;
+            }
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            LocalDate today = LocalDate.now();
+
+            // path[0] is empty and path[1] is "habits"; the context also matches names like /habitsX
+            if (!path[1].equals("habits")) {
+                send(exchange, 404, Json.error("Not found."));
+                return;
+            }
+            if (path.length == 2) {
+                if (method.equals("GET")) {
+                    send(exchange, 200, Json.habits(habitService.getHabitsReadOnly(), today));
+                } else if (method.equals("POST")) {
+                    Map<String, String> body = readJson(exchange, new JsonLine());
+                    if (body == null) {
+                        return;
+                    }
+                    Habit habit = habitService.addHabit(body.get("name"), body.getOrDefault("description", ""));
+                    send(exchange, 201, Json.habit(habit, today));
+                } else {
+                    send(exchange, 405, Json.error("Method not allowed."));
+                }
+                return;
+            }
+
+            Habit habit = parseId(path[2]).flatMap(habitService::findById).orElse(null);
+            if (habit == null) {
+                send(exchange, 404, Json.error("Habit not found."));
+                return;
+            }
+
+            if (path.length == 3 && method.equals("GET")) {
+                send(exchange, 200, Json.habit(habit, today));
+            } else if (path.length == 4 && path[3].equals("streak") && method.equals("GET")) {
+                String date = query.get("date");
+                send(exchange, 200, Json.streak(habit, date == null ? today : LocalDate.parse(date)));
+            } else if (path.length == 4 && path[3].equals("mark") && method.equals("POST")) {
+                JsonLine json = new JsonLine();
+                Map<String, String> body = readJson(exchange, json);
+                if (body == null) {
+                    return;
+                }
+                boolean done = parseDone(body, json);
+                try {
+                    habitService.markToday(habit.getId(), done);
+                } catch (IllegalArgumentException ex) {
+                    // Removed since it was looked up
+                    send(exchange, 404, Json.error("Habit not found."));
+                    return;
+                }
+                Habit updated = habitService.findById(habit.getId()).orElse(habit);
+                send(exchange, 200, Json.habit(updated, today));
+            } else {
+                send(exchange, 404, Json.error("Not found."));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            send(exchange, 400, Json.error(ex.getMessage()));
+        } catch (RuntimeException ex) {
+            System.err.println("HTTP request failed: " + ex.getMessage());
+            send(exchange, 500, Json.error("Internal error."));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!allowed(exchange)) {
+                return;
+            }
+            if (!exchange.getRequestURI().getPath().equals("/metrics")) {
+                send(exchange, 404, Json.error("Not found."));
+                return;
+            }
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            Metrics.dump(new PrintStream(text, true, StandardCharsets.UTF_8));
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, text.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                text.writeTo(out);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Sends 401 or 403 and returns false unless the request has the token and comes from a loopback origin
+    private boolean allowed(HttpExchange exchange) throws IOException {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !isLoopbackHost(host)) {
+            send(exchange, 403, Json.error("Host not allowed."));
+            return false;
+        }
+        String origin = exchange.getRequestHeaders().getFirst("Origin");
+        if (origin != null && !origin.equalsIgnoreCase("http://" + host)) {
+            send(exchange, 403, Json.error("Origin not allowed."));
+            return false;
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null
+                || !MessageDigest.isEqual(expectedAuthorization, authorization.getBytes(StandardCharsets.UTF_8))) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            send(exchange, 401, Json.error("Missing or wrong token."));
+            return false;
+        }
+        return true;
+    }
+
+    // A rebound DNS name reaches the socket too, so only loopback names on this server's port pass
+    private boolean isLoopbackHost(String host) {
+        String name = host.toLowerCase(Locale.ROOT);
+        int colon = name.lastIndexOf(':');
+        if (colon > name.lastIndexOf(']')) {
+            if (!name.substring(colon + 1).equals(String.valueOf(getPort()))) {
+                return false;
+            }
+            name = name.substring(0, colon);
+        }
+        return name.equals("127.0.0.1") || name.equals("localhost") || name.equals("[::1]");
+    }
+
+    // Returns the members of a JSON object body, parsed with the given parser, or sends an error and returns null
+    private static Map<String, String> readJson(HttpExchange exchange, JsonLine json) throws IOException {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type == null || !type.toLowerCase(Locale.ROOT).startsWith("application/json")) {
+            send(exchange, 415, Json.error("Expected application/json."));
+            return null;
+        }
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            send(exchange, 413, Json.error("Request body too large."));
+            return null;
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return json.parse(text.isBlank() ? "{}" : text);
+    }
+
+    // Only the JSON literals true and false; a string such as "false" is refused rather than guessed at
+    private static boolean parseDone(Map<String, String> body, JsonLine json) {
+        if (!body.containsKey("done")) {
+            return true;
+        }
+        String done = body.get("done");
+        if (json.isLiteral("done") && ("true".equals(done) || "false".equals(done))) {
+            return done.equals("true");
+        }
+        throw new IllegalArgumentException("done must be true or false.");
+    }
+
+    private static Optional<UUID> parseId(String text) {
+        try {
+            return Optional.of(UUID.fromString(text));
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
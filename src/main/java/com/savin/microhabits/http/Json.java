@@ -0,0 +1,87 @@
+package com.savin.microhabits.http;
+
+import com.savin.microhabits.model.Habit;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Writes the few JSON shapes the HTTP API returns.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static String habit(Habit habit, LocalDate today) {
+        StringBuilder sb = new StringBuilder(160);
+        appendHabit(sb, habit, today);
+        return sb.toString();
+    }
+
+    static String habits(List<Habit> habits, LocalDate today) {
+        StringBuilder sb = new StringBuilder(32 + habits.size() * 160);
+        sb.append('[');
+        for (int i = 0; i < habits.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendHabit(sb, habits.get(i), today);
+        }
+        return sb.append(']').toString();
+    }
+
+    static String streak(Habit habit, LocalDate date) {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append("{\"id\":");
+        string(sb, habit.getId().toString());
+        sb.append(",\"date\":");
+        string(sb, date.toString());
+        sb.append(",\"streak\":").append(habit.getStreak(date));
+        return sb.append('}').toString();
+    }
+
+    static String error(String message) {
+        StringBuilder sb = new StringBuilder(message.length() + 16);
+        sb.append("{\"error\":");
+        string(sb, message);
+        return sb.append('}').toString();
+    }
+
+    // Uses only the cached streak state, so listing habits never decodes a lazy history
+    private static void appendHabit(StringBuilder sb, Habit habit, LocalDate today) {
+        sb.append("{\"id\":");
+        string(sb, habit.getId().toString());
+        sb.append(",\"name\":");
+        string(sb, habit.getName());
+        sb.append(",\"description\":");
+        string(sb, habit.getDescription());
+        sb.append(",\"streak\":").append(habit.getStreak(today));
+        sb.append(",\"longestStreak\":").append(habit.getLongestStreak());
+        sb.append(",\"lastCompleted\":");
+        habit.getLastCompletedDate().ifPresentOrElse(d -> string(sb, d.toString()), () -> sb.append("null"));
+        sb.append('}');
+    }
+
+    private static void string(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,62 @@
+package com.savin.microhabits.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide registry of named counters and latency histograms.
+ * Hot paths keep the instrument in a static field and only pay for the update.
+ * {@link #dump} prints everything; run with {@code -Dmicrohabits.metrics=true}
+ * to have it printed to stderr at exit.
+ */
+public final class Metrics {
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final AtomicBoolean DUMP_AT_EXIT = new AtomicBoolean();
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Prints every counter and histogram, sorted by name.
+     */
+    public static void dump(PrintStream out) {
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            out.printf("%-32s %,d%n", entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            if (h.count() == 0) {
+                continue;
+            }
+            out.printf("%-32s count %,d  mean %s  p50 %s  p99 %s  max %s%n", entry.getKey(), h.count(),
+                    millis(h.totalNanos() / h.count()), millis(h.percentileNanos(50)),
+                    millis(h.percentileNanos(99)), millis(h.maxNanos()));
+        }
+    }
+
+    /**
+     * Prints the metrics to stderr when the JVM exits if {@code microhabits.metrics} is set to true.
+     */
+    public static void dumpAtExitIfEnabled() {
+        if (Boolean.getBoolean("microhabits.metrics") && DUMP_AT_EXIT.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(System.err), "metrics-dump"));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1_000_000.0);
+    }
+}
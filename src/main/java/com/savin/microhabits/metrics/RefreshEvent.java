@@ -0,0 +1,21 @@
+package com.savin.microhabits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for rebuilding the habit list in the UI.
+ */
+@Name("com.savin.microhabits.Refresh")
+@Label("Habit List Refresh")
+@Category({"Micro-Habits", "UI"})
+@Description("Replacing every habit shown in the list")
+@StackTrace(false)
+public final class RefreshEvent extends jdk.jfr.Event {
+
+    @Label("Habits")
+    public int habits;
+}
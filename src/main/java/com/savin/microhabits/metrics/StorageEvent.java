@@ -0,0 +1,32 @@
+package com.savin.microhabits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one load or save of a save file.
+ */
+@Name("com.savin.microhabits.Storage")
+@Label("Habit Storage")
+@Category({"Micro-Habits", "Storage"})
+@Description("Loading or saving the habit file")
+@StackTrace(false)
+public final class StorageEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Habits")
+    public int habits;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
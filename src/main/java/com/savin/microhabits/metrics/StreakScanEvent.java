@@ -0,0 +1,22 @@
+package com.savin.microhabits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a streak that had to be computed from the history bits,
+ * which includes reading a lazily loaded history. Only slow scans are recorded by default.
+ */
+@Name("com.savin.microhabits.StreakScan")
+@Label("Streak Scan")
+@Category({"Micro-Habits", "Model"})
+@Description("Streak computed from the history instead of the cached streak state")
+@Threshold("1 ms")
+public final class StreakScanEvent extends jdk.jfr.Event {
+
+    @Label("Streak")
+    public int streak;
+}
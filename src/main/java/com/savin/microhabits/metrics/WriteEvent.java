@@ -0,0 +1,25 @@
+package com.savin.microhabits.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one change or batch of changes in HabitService,
+ * from taking the write lock to publishing the new snapshot. Only slow ones are recorded by default.
+ */
+@Name("com.savin.microhabits.ServiceWrite")
+@Label("Habit Service Write")
+@Category({"Micro-Habits", "Service"})
+@Description("A change applied under the HabitService write lock")
+@Threshold("1 ms")
+public final class WriteEvent extends jdk.jfr.Event {
+
+    @Label("Events")
+    public int events;
+
+    @Label("Habits")
+    public int habits;
+}
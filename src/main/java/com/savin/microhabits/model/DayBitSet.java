@@ -0,0 +1,410 @@
+package com.savin.microhabits.model;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact store of per-day completion flags.
+ * Days are kept as bits in {@code long} words starting at an epoch-day offset,
+ * with a second mask for days that were explicitly marked as not completed.
+ */
+public final class DayBitSet {
+
+    private static final long[] NO_WORDS = new long[0];
+
+    // Epoch day of bit 0 in word 0 (always a multiple of 64)
+    private long baseDay;
+
+    private long[] done = NO_WORDS;
+    private long[] notDone = NO_WORDS;
+
+    // True while the word arrays may be shared with a copy; they are cloned before the next change
+    private boolean shared;
+
+    /**
+     * Receives recorded days in ascending order.
+     */
+    @FunctionalInterface
+    public interface DayConsumer {
+        void accept(long epochDay, boolean completed);
+    }
+
+    public DayBitSet() {
+    }
+
+    private DayBitSet(DayBitSet other) {
+        this.baseDay = other.baseDay;
+        this.done = other.done;
+        this.notDone = other.notDone;
+        this.shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * Returns an independent copy of this set. The copy takes constant time:
+     * both sets share their words until one of them changes.
+     */
+    public DayBitSet copy() {
+        return new DayBitSet(this);
+    }
+
+    /**
+     * Checks whether the day was marked as completed.
+     */
+    public boolean isCompleted(long epochDay) {
+        int word = wordIndex(epochDay);
+        return word >= 0 && word < done.length && (done[word] & bit(epochDay)) != 0;
+    }
+
+    /**
+     * Checks whether the day has any recorded status (completed or not).
+     */
+    public boolean isRecorded(long epochDay) {
+        int word = wordIndex(epochDay);
+        return word >= 0 && word < done.length && ((done[word] | notDone[word]) & bit(epochDay)) != 0;
+    }
+
+    /**
+     * Records the status for a day, growing the word arrays as needed.
+     */
+    public void set(long epochDay, boolean completed) {
+        ensureCovers(epochDay);
+        if (shared) {
+            done = done.clone();
+            notDone = notDone.clone();
+            shared = false;
+        }
+        int word = wordIndex(epochDay);
+        long mask = bit(epochDay);
+        if (completed) {
+            done[word] |= mask;
+            notDone[word] &= ~mask;
+        } else {
+            done[word] &= ~mask;
+            notDone[word] |= mask;
+        }
+    }
+
+    /**
+     * Returns the number of recorded days.
+     */
+    public int size() {
+        int count = 0;
+        for (int i = 0; i < done.length; i++) {
+            count += Long.bitCount(done[i] | notDone[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of completed days.
+     */
+    public int countCompleted() {
+        int count = 0;
+        for (long w : done) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of consecutive completed days ending at (and including) the given day.
+     */
+    public int runEndingAt(long epochDay) {
+        int word = wordIndex(epochDay);
+        if (word < 0 || word >= done.length) {
+            return 0;
+        }
+
+        int offset = (int) (epochDay & 63);
+        // Shift the day's bit to the top so leading ones count backwards from it
+        int ones = Long.numberOfLeadingZeros(~(done[word] << (63 - offset)));
+        if (ones <= offset) {
+            return ones;
+        }
+
+        int run = offset + 1;
+        for (int i = word - 1; i >= 0; i--) {
+            if (done[i] != -1L) {
+                return run + Long.numberOfLeadingZeros(~done[i]);
+            }
+            run += 64;
+        }
+        return run;
+    }
+
+    /**
+     * Returns the number of consecutive completed days starting at (and including) the given day.
+     */
+    public int runStartingAt(long epochDay) {
+        int word = wordIndex(epochDay);
+        if (word < 0 || word >= done.length) {
+            return 0;
+        }
+
+        int offset = (int) (epochDay & 63);
+        int ones = Long.numberOfTrailingZeros(~(done[word] >>> offset));
+        if (ones < 64 - offset) {
+            return ones;
+        }
+
+        int run = 64 - offset;
+        for (int i = word + 1; i < done.length; i++) {
+            if (done[i] != -1L) {
+                return run + Long.numberOfTrailingZeros(~done[i]);
+            }
+            run += 64;
+        }
+        return run;
+    }
+
+    /**
+     * Returns the latest completed day at or before the given day, or {@link Long#MIN_VALUE} if none.
+     */
+    public long lastCompletedAtOrBefore(long epochDay) {
+        if (done.length == 0 || epochDay < baseDay) {
+            return Long.MIN_VALUE;
+        }
+
+        int word = wordIndex(epochDay);
+        long bits;
+        if (word >= done.length) {
+            word = done.length - 1;
+            bits = done[word];
+        } else {
+            int offset = (int) (epochDay & 63);
+            bits = offset == 63 ? done[word] : done[word] & ((1L << (offset + 1)) - 1);
+        }
+
+        while (true) {
+            if (bits != 0) {
+                return baseDay + ((long) word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (--word < 0) {
+                return Long.MIN_VALUE;
+            }
+            bits = done[word];
+        }
+    }
+
+    /**
+     * Copies the completed bits of {@code words} words, starting at {@code fromDay}, into {@code dest}.
+     * {@code fromDay} must be a multiple of 64; days before or after this set's range come out as zero.
+     */
+    public void copyCompletedWords(long fromDay, long[] dest, int destOffset, int words) {
+        if ((fromDay & 63) != 0) {
+            throw new IllegalArgumentException("fromDay must be a multiple of 64.");
+        }
+        Arrays.fill(dest, destOffset, destOffset + words, 0L);
+        long first = (baseDay - fromDay) >> 6;
+        long start = Math.max(0, first);
+        long end = Math.min(words, first + done.length);
+        if (start < end) {
+            System.arraycopy(done, (int) (start - first), dest, destOffset + (int) start, (int) (end - start));
+        }
+    }
+
+    /**
+     * Returns the longest run of consecutive completed days.
+     */
+    public int longestRun() {
+        return longestRun(done, 0, done.length);
+    }
+
+    /**
+     * Returns the longest run of set bits in {@code words[from..to)}, read as one bit string
+     * with bit 0 of each word first.
+     */
+    public static int longestRun(long[] words, int from, int to) {
+        int best = 0;
+        int current = 0;
+
+        for (int i = from; i < to; i++) {
+            long w = words[i];
+            if (w == -1L) {
+                current += 64;
+                continue;
+            }
+
+            // Run carried over from earlier words ends inside this one
+            best = Math.max(best, current + Long.numberOfTrailingZeros(~w));
+
+            // Longest run fully inside the word: each step shortens every run by one
+            int inner = 0;
+            for (long x = w; x != 0; x &= x << 1) {
+                inner++;
+            }
+            best = Math.max(best, inner);
+
+            current = Long.numberOfLeadingZeros(~w);
+        }
+
+        return Math.max(best, current);
+    }
+
+    /**
+     * Visits every recorded day in ascending order.
+     */
+    public void forEach(DayConsumer consumer) {
+        for (int i = 0; i < done.length; i++) {
+            long bits = done[i] | notDone[i];
+            while (bits != 0) {
+                int offset = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                consumer.accept(baseDay + ((long) i << 6) + offset, (done[i] & (1L << offset)) != 0);
+            }
+        }
+    }
+
+    /**
+     * Returns an unmodifiable map view keyed by date, in ascending date order.
+     */
+    public Map<LocalDate, Boolean> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * Approximate heap size of the word arrays, in bytes.
+     */
+    public long wordBytes() {
+        return 8L * (done.length + notDone.length);
+    }
+
+    private int wordIndex(long epochDay) {
+        long index = (epochDay - baseDay) >> 6;
+        if (index < 0) return -1;
+        return index > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) index;
+    }
+
+    private static long bit(long epochDay) {
+        // Shift distance is taken mod 64, which is the day's offset within its word
+        return 1L << epochDay;
+    }
+
+    private void ensureCovers(long epochDay) {
+        long alignedDay = epochDay & ~63L;
+
+        if (done.length == 0) {
+            baseDay = alignedDay;
+            done = new long[1];
+            notDone = new long[1];
+            shared = false;
+            return;
+        }
+
+        if (alignedDay < baseDay) {
+            int extra = checkedWords((baseDay - alignedDay) / 64);
+            // Leave some headroom so back-filling day by day does not copy on every call
+            extra = checkedWords((long) extra + Math.min(done.length, 16));
+            done = prepend(done, extra);
+            notDone = prepend(notDone, extra);
+            baseDay -= 64L * extra;
+            shared = false;
+            return;
+        }
+
+        long needed = (alignedDay - baseDay) / 64 + 1;
+        if (needed > done.length) {
+            int newLength = checkedWords(Math.max(needed, (long) done.length + (done.length >> 1)));
+            done = Arrays.copyOf(done, newLength);
+            notDone = Arrays.copyOf(notDone, newLength);
+            shared = false;
+        }
+    }
+
+    private static int checkedWords(long words) {
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Date range too large.");
+        }
+        return (int) words;
+    }
+
+    private static long[] prepend(long[] words, int extra) {
+        long[] grown = new long[checkedWords((long) words.length + extra)];
+        System.arraycopy(words, 0, grown, extra, words.length);
+        return grown;
+    }
+
+    // Read-only map over the bit words; entries are created while iterating
+    private final class MapView extends AbstractMap<LocalDate, Boolean> {
+
+        @Override
+        public Boolean get(Object key) {
+            if (!(key instanceof LocalDate date)) return null;
+            long day = date.toEpochDay();
+            return isRecorded(day) ? isCompleted(day) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof LocalDate date && isRecorded(date.toEpochDay());
+        }
+
+        @Override
+        public int size() {
+            return DayBitSet.this.size();
+        }
+
+        @Override
+        public Set<Entry<LocalDate, Boolean>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<LocalDate, Boolean>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return DayBitSet.this.size();
+                }
+            };
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<LocalDate, Boolean>> {
+
+        private int word = -1;
+        private long remaining;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            while (remaining == 0 && ++word < done.length) {
+                remaining = done[word] | notDone[word];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining != 0;
+        }
+
+        @Override
+        public Map.Entry<LocalDate, Boolean> next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            int offset = Long.numberOfTrailingZeros(remaining);
+            remaining &= remaining - 1;
+            long day = baseDay + ((long) word << 6) + offset;
+            boolean completed = (done[word] & (1L << offset)) != 0;
+            Map.Entry<LocalDate, Boolean> entry = Map.entry(LocalDate.ofEpochDay(day), completed);
+            if (remaining == 0) {
+                advance();
+            }
+            return entry;
+        }
+    }
+}
@@ -1,19 +1,40 @@
 package com.savin.microhabits.model;
 
+import com.savin.microhabits.metrics.Counter;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.metrics.StreakScanEvent;
+
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Represents a single habit and its daily completion history.
+ * Not synchronized: HabitService only changes habits nobody else has seen yet,
+ * so the instances it hands out can be read from any thread.
  */
 public class Habit {
 
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    // Streaks read from the history bits; the scan takes tens of nanoseconds, so only the
+    // JFR event times it, and only while a recording is running
+    private static final Counter STREAK_SCANS = Metrics.counter("habit.streak.scans");
+
     private final UUID id;
     private String name;
     private String description;
 
-    // Stores completion status per date
-    private final Map<LocalDate, Boolean> dailyStatus = new HashMap<>();
+    // Stores completion status per date (one bit per day); null until a lazily loaded history is needed
+    private volatile DayBitSet dailyStatus;
+
+    // Reads the history on first use; only set while dailyStatus is null
+    private Supplier<DayBitSet> historyLoader;
+
+    // Streak state kept up to date by markCompleted
+    private long lastCompletedDay = NO_DAY;
+    private int currentStreak;
+    private int longestStreak;
 
     /**
      * Creates a new habit with a generated identifier.
@@ -28,10 +49,48 @@ public class Habit {
      */
     public Habit(UUID id, String name, String description) {
         this.id = Objects.requireNonNull(id, "id");
+        this.dailyStatus = new DayBitSet();
         setName(name);
         setDescription(description);
     }
 
+    /**
+     * Creates a habit whose history is read only when something first needs it.
+     * Until then today's streak, the longest streak and the last completion come from the summary.
+     * Used when loading habits from storage.
+     */
+    public Habit(UUID id, String name, String description, HistorySummary summary, Supplier<DayBitSet> historyLoader) {
+        this.id = Objects.requireNonNull(id, "id");
+        this.historyLoader = Objects.requireNonNull(historyLoader, "historyLoader");
+        this.lastCompletedDay = summary.lastCompletedDay();
+        this.currentStreak = summary.currentStreak();
+        this.longestStreak = summary.longestStreak();
+        setName(name);
+        setDescription(description);
+    }
+
+    private Habit(Habit other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.description = other.description;
+        synchronized (other) {
+            // A history that was never read stays unread in the copy too
+            DayBitSet status = other.dailyStatus;
+            this.dailyStatus = status == null ? null : status.copy();
+            this.historyLoader = other.historyLoader;
+        }
+        this.lastCompletedDay = other.lastCompletedDay;
+        this.currentStreak = other.currentStreak;
+        this.longestStreak = other.longestStreak;
+    }
+
+    /**
+     * Returns an independent copy with the same ID, details and history.
+     */
+    public Habit copy() {
+        return new Habit(this);
+    }
+
     public UUID getId() {
         return id;
     }
@@ -71,7 +130,7 @@ public class Habit {
      * Checks whether the habit was completed on a given date.
      */
     public boolean isCompletedOn(LocalDate date) {
-        return Boolean.TRUE.equals(dailyStatus.get(date));
+        return date != null && history().isCompleted(date.toEpochDay());
     }
 
     /**
@@ -79,14 +138,78 @@ public class Habit {
      */
     public void markCompleted(LocalDate date, boolean completed) {
         Objects.requireNonNull(date, "date");
-        dailyStatus.put(date, completed);
+        markCompletedEpochDay(date.toEpochDay(), completed);
+    }
+
+    /**
+     * Same as {@link #markCompleted(LocalDate, boolean)} for a date given as an epoch day.
+     * Lets storage code record history without creating LocalDate objects.
+     */
+    public void markCompletedEpochDay(long day, boolean completed) {
+        DayBitSet status = history();
+        boolean wasCompleted = status.isCompleted(day);
+        status.set(day, completed);
+
+        if (completed && !wasCompleted) {
+            onDayCompleted(status, day);
+        } else if (!completed && wasCompleted) {
+            onDayCleared(status, day);
+        }
+    }
+
+    // Extends the streak state with a newly completed day
+    private void onDayCompleted(DayBitSet status, long day) {
+        if (lastCompletedDay == NO_DAY || day > lastCompletedDay) {
+            currentStreak = (day == lastCompletedDay + 1) ? currentStreak + 1 : 1;
+            lastCompletedDay = day;
+            longestStreak = Math.max(longestStreak, currentStreak);
+            return;
+        }
+
+        // Back-filled day: only the run around it can change
+        long runEnd = day + status.runStartingAt(day) - 1;
+        int run = status.runEndingAt(runEnd);
+        if (runEnd == lastCompletedDay) {
+            currentStreak = run;
+        }
+        longestStreak = Math.max(longestStreak, run);
+    }
+
+    // Shrinks the streak state after a completed day was cleared
+    private void onDayCleared(DayBitSet status, long day) {
+        if (day == lastCompletedDay) {
+            lastCompletedDay = status.lastCompletedAtOrBefore(day - 1);
+            currentStreak = (lastCompletedDay == NO_DAY) ? 0 : status.runEndingAt(lastCompletedDay);
+        } else if (day > lastCompletedDay - currentStreak) {
+            currentStreak = (int) (lastCompletedDay - day);
+        }
+        longestStreak = status.longestRun();
     }
 
     /**
      * Returns a read-only view of the completion history.
      */
     public Map<LocalDate, Boolean> getDailyStatusReadOnly() {
-        return Collections.unmodifiableMap(dailyStatus);
+        return history().asMap();
+    }
+
+    /**
+     * Visits every recorded day in date order, passing epoch days instead of LocalDate objects.
+     */
+    public void forEachDay(DayBitSet.DayConsumer consumer) {
+        history().forEach(consumer);
+    }
+
+    /**
+     * Copies whole words of completion bits into {@code dest}, see {@link DayBitSet#copyCompletedWords}.
+     * A habit that was never completed fills zeros without reading its history.
+     */
+    public void copyCompletedWords(long fromDay, long[] dest, int destOffset, int words) {
+        if (lastCompletedDay == NO_DAY) {
+            Arrays.fill(dest, destOffset, destOffset + words, 0L);
+            return;
+        }
+        history().copyCompletedWords(fromDay, dest, destOffset, words);
     }
 
     /**
@@ -95,21 +218,71 @@ public class Habit {
     public int getStreak(LocalDate upToDate) {
         Objects.requireNonNull(upToDate, "upToDate");
 
-        int streak = 0;
-        LocalDate current = upToDate;
-
-        while (isCompletedOn(current)) {
-            streak++;
-            current = current.minusDays(1);
+        long day = upToDate.toEpochDay();
+        if (day == lastCompletedDay) {
+            return currentStreak;
+        }
+        if (day > lastCompletedDay) {
+            return 0;
         }
 
+        StreakScanEvent event = new StreakScanEvent();
+        event.begin();
+        int streak = history().runEndingAt(day);
+        STREAK_SCANS.increment();
+        event.end();
+        if (event.shouldCommit()) {
+            event.streak = streak;
+            event.commit();
+        }
         return streak;
     }
 
+    /**
+     * Returns the number of completed days. Reads a lazily loaded history.
+     */
+    public int countCompleted() {
+        return lastCompletedDay == NO_DAY ? 0 : history().countCompleted();
+    }
+
+    /**
+     * Returns the figures needed to show this habit without its full history.
+     */
+    public HistorySummary getSummary() {
+        return new HistorySummary(lastCompletedDay, currentStreak, longestStreak);
+    }
+
+    /**
+     * Returns the longest streak ever recorded.
+     */
+    public int getLongestStreak() {
+        return longestStreak;
+    }
+
+    /**
+     * Returns the most recent completed date, if any.
+     */
+    public Optional<LocalDate> getLastCompletedDate() {
+        return lastCompletedDay == NO_DAY ? Optional.empty() : Optional.of(LocalDate.ofEpochDay(lastCompletedDay));
+    }
+
     /**
      * Returns the current streak up to today.
      */
     public int getStreakToday() {
         return getStreak(LocalDate.now());
     }
+
+    private DayBitSet history() {
+        DayBitSet status = dailyStatus;
+        return status != null ? status : loadHistory();
+    }
+
+    private synchronized DayBitSet loadHistory() {
+        if (dailyStatus == null) {
+            dailyStatus = historyLoader.get();
+            historyLoader = null;
+        }
+        return dailyStatus;
+    }
 }
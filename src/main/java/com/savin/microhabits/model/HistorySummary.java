@@ -0,0 +1,13 @@
+package com.savin.microhabits.model;
+
+/**
+ * Streak figures of a habit, enough to show it without reading its full history.
+ *
+ * @param lastCompletedDay epoch day of the most recent completion, or Long.MIN_VALUE if none
+ * @param currentStreak    completed days in a row ending at lastCompletedDay
+ * @param longestStreak    longest run of completed days ever
+ */
+public record HistorySummary(long lastCompletedDay, int currentStreak, int longestStreak) {
+
+    public static final HistorySummary EMPTY = new HistorySummary(Long.MIN_VALUE, 0, 0);
+}
@@ -0,0 +1,331 @@
+package com.savin.microhabits.profile;
+
+import com.savin.microhabits.service.HabitService;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Habit profiles of many users on one machine, one save file per user.
+ *
+ * Users are spread over 256 shard directories by a hash of their ID
+ * ({@code root/3f/alice/habits.dat}), so no directory grows too large. IDs start with a letter
+ * or digit and are case-insensitive: they are lowercased before use, so two IDs never share a
+ * directory on a case-insensitive file system and none can name "." or "..".
+ * Loaded profiles are kept in an LRU cache; when it is over capacity the least
+ * recently used profile nobody holds a lease on is evicted and its unsaved changes
+ * are written back in the background. A semaphore caps how many profiles are read
+ * or written at once. Serving one user only ever reads or writes that user's file.
+ */
+public final class ProfileStore implements AutoCloseable {
+
+    private static final Pattern USER_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_.-]{0,63}");
+
+    private final Path root;
+    private final int maxCached;
+    private final Semaphore ioPermits;
+    private final ExecutorService writeBacks = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Guarded by this. Access-ordered, so iteration starts at the least recently used profile
+    private final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // Evicted profiles still being written; loading the same user waits for these.
+    // A write that failed completes with the unsaved service so the new load can take it over
+    private final Map<String, CompletableFuture<HabitService>> writing = new HashMap<>();
+    private boolean closed;
+
+    private static final class Entry {
+        final String userId;
+        final FileStorage storage;
+        final CompletableFuture<HabitService> service = new CompletableFuture<>();
+        // Held from taking the pending changes until they are written, so an older list is never
+        // written over a newer one. Not a monitor, so virtual threads waiting on disk are not pinned
+        final ReentrantLock saveLock = new ReentrantLock();
+        int leases;
+
+        Entry(String userId, FileStorage storage) {
+            this.userId = userId;
+            this.storage = storage;
+        }
+    }
+
+    /**
+     * A user's loaded profile. Close it when the request is done so the profile can be evicted.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final HabitService service;
+        private boolean released;
+
+        private Lease(Entry entry, HabitService service) {
+            this.entry = entry;
+            this.service = service;
+        }
+
+        public String userId() {
+            return entry.userId;
+        }
+
+        public HabitService service() {
+            return service;
+        }
+
+        /**
+         * Writes this user's unsaved changes now.
+         */
+        public void save() throws IOException {
+            writeBack(entry, service);
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * @param root            directory holding the shard directories
+     * @param maxCached       profiles kept loaded while not leased
+     * @param maxConcurrentIo profile loads and saves allowed to run at the same time
+     */
+    public ProfileStore(Path root, int maxCached, int maxConcurrentIo) {
+        if (maxCached < 1 || maxConcurrentIo < 1) {
+            throw new IllegalArgumentException("maxCached and maxConcurrentIo must be at least 1.");
+        }
+        this.root = root;
+        this.maxCached = maxCached;
+        this.ioPermits = new Semaphore(maxConcurrentIo, true);
+    }
+
+    /**
+     * Returns the user's profile, loading it if it is not cached.
+     * Concurrent requests for the same user share one load.
+     */
+    public Lease acquire(String userId) throws IOException {
+        userId = normalize(userId);
+
+        Entry entry;
+        boolean load = false;
+        CompletableFuture<HabitService> pendingWrite;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Profile store is closed.");
+            }
+            entry = cache.get(userId);
+            if (entry == null) {
+                entry = new Entry(userId, new FileStorage(fileFor(userId), SaveFormat.V3_SEGMENTED));
+                entry.storage.setLazyHistory(true);
+                cache.put(userId, entry);
+                load = true;
+            }
+            entry.leases++;
+            pendingWrite = writing.get(userId);
+        }
+
+        if (load) {
+            load(entry, pendingWrite);
+        }
+
+        HabitService service;
+        try {
+            service = entry.service.join();
+        } catch (CompletionException ex) {
+            release(entry);
+            Throwable cause = ex.getCause();
+            throw (cause instanceof IOException io) ? io : new IOException("Could not load profile.", cause);
+        }
+
+        evictIfNeeded();
+        return new Lease(entry, service);
+    }
+
+    /**
+     * Returns the save file of a user: {@code root/<shard>/<userId>/habits.dat}, with the ID lowercased.
+     */
+    public Path fileFor(String userId) {
+        String id = normalize(userId);
+        return root.resolve(shard(id)).resolve(id).resolve("habits.dat");
+    }
+
+    private static String normalize(String userId) {
+        if (userId == null || !USER_ID.matcher(userId).matches()) {
+            throw new IllegalArgumentException("Invalid user ID.");
+        }
+        return userId.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes back every cached profile and waits for background write-backs to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        List<Entry> entries;
+        synchronized (this) {
+            closed = true;
+            entries = new ArrayList<>(cache.values());
+        }
+
+        IOException failure = null;
+        for (Entry entry : entries) {
+            try {
+                HabitService service = entry.service.getNow(null);
+                if (service != null) {
+                    writeBack(entry, service);
+                }
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+        }
+
+        writeBacks.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void load(Entry entry, CompletableFuture<HabitService> pendingWrite) {
+        try {
+            // The previous copy of this profile may still be being written
+            HabitService unsaved = pendingWrite == null ? null : pendingWrite.join();
+            if (unsaved != null) {
+                entry.service.complete(unsaved);
+                return;
+            }
+            HabitService service = new HabitService();
+            withIo(() -> service.replaceAll(entry.storage.load()));
+            entry.service.complete(service);
+        } catch (IOException | RuntimeException ex) {
+            synchronized (this) {
+                cache.remove(entry.userId, entry);
+            }
+            entry.service.completeExceptionally(ex);
+        }
+    }
+
+    private void release(Entry entry) {
+        synchronized (this) {
+            entry.leases--;
+        }
+        evictIfNeeded();
+    }
+
+    // Drops least recently used idle profiles and writes them back off the calling thread
+    private void evictIfNeeded() {
+        List<Entry> victims = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            Iterator<Entry> it = cache.values().iterator();
+            while (cache.size() > maxCached && it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.leases == 0 && entry.service.isDone() && !entry.service.isCompletedExceptionally()) {
+                    it.remove();
+                    victims.add(entry);
+                }
+            }
+
+            for (Entry victim : victims) {
+                HabitService service = victim.service.join();
+                CompletableFuture<HabitService> previous =
+                        writing.getOrDefault(victim.userId, CompletableFuture.completedFuture(null));
+                CompletableFuture<HabitService> done =
+                        previous.thenApplyAsync(ignored -> writeBackEvicted(victim, service), writeBacks);
+                writing.put(victim.userId, done);
+                done.whenComplete((ignored, ex) -> {
+                    synchronized (this) {
+                        writing.remove(victim.userId, done);
+                    }
+                });
+            }
+        }
+    }
+
+    // Returns the service if its changes could not be written and a new load of the user should take it over
+    private HabitService writeBackEvicted(Entry entry, HabitService service) {
+        try {
+            writeBack(entry, service);
+            return null;
+        } catch (IOException ex) {
+            System.err.println("Profile write-back failed for " + entry.userId + ": " + ex.getMessage());
+            synchronized (this) {
+                if (!closed && !cache.containsKey(entry.userId)) {
+                    // Keep it cached so the next eviction tries again
+                    cache.put(entry.userId, entry);
+                    return null;
+                }
+            }
+            return service;
+        }
+    }
+
+    private void writeBack(Entry entry, HabitService service) throws IOException {
+        entry.saveLock.lock();
+        try {
+            HabitService.PendingChanges changes = service.takePendingChanges();
+            if (changes.isEmpty()) {
+                return;
+            }
+            try {
+                withIo(() -> entry.storage.saveChanges(changes.habits(), changes.changed()));
+            } catch (IOException | RuntimeException ex) {
+                service.restorePendingChanges(changes);
+                throw ex;
+            }
+        } finally {
+            entry.saveLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private void withIo(IoAction action) throws IOException {
+        try {
+            ioPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for disk access.");
+        }
+        try {
+            action.run();
+        } finally {
+            ioPermits.release();
+        }
+    }
+
+    // First byte of SHA-256 of the ID as two hex digits
+    private static String shard(String userId) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(userId.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().toHexDigits(hash[0]);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
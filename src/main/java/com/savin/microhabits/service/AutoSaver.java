@@ -0,0 +1,120 @@
+package com.savin.microhabits.service;
+
+import com.savin.microhabits.storage.FileStorage;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves unsaved changes in the background once edits have paused for a while.
+ * Every change restarts the delay, so a burst of edits leads to a single save.
+ */
+public final class AutoSaver implements AutoCloseable {
+
+    public static final Duration DEFAULT_DELAY = Duration.ofSeconds(2);
+
+    private final HabitService habitService;
+    private final FileStorage storage;
+    private final long delayMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "microhabits-autosave");
+        t.setDaemon(true);
+        return t;
+    });
+    private final HabitListener listener = this::changed;
+    private final Object saveLock = new Object();
+
+    // Guarded by this
+    private ScheduledFuture<?> scheduled;
+    private boolean closed;
+
+    public AutoSaver(HabitService habitService, FileStorage storage, Duration delay) {
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("delay cannot be negative.");
+        }
+        this.habitService = habitService;
+        this.storage = storage;
+        this.delayMillis = delay.toMillis();
+        habitService.addListener(listener);
+    }
+
+    /**
+     * Saves pending changes right away on the calling thread. Does nothing if there are none.
+     */
+    public void saveNow() throws IOException {
+        synchronized (this) {
+            cancelScheduled();
+        }
+        save();
+    }
+
+    /**
+     * Stops listening and waits for a running save to finish. Pending changes are not saved;
+     * call {@link #saveNow()} afterwards if they are not persisted some other way.
+     */
+    @Override
+    public void close() {
+        habitService.removeListener(listener);
+        synchronized (this) {
+            closed = true;
+            cancelScheduled();
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void changed(List<HabitEvent> events) {
+        if (!habitService.hasPendingChanges()) {
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            cancelScheduled();
+            scheduled = scheduler.schedule(this::saveQuietly, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelScheduled() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException ex) {
+            System.err.println("Auto-save failed: " + ex.getMessage());
+        }
+    }
+
+    // Serialized so a manual save and a timed save never write at the same time.
+    // Uses its own lock so scheduling from the UI thread never waits for a save.
+    private void save() throws IOException {
+        synchronized (saveLock) {
+            HabitService.PendingChanges changes = habitService.takePendingChanges();
+            if (changes.isEmpty()) {
+                return;
+            }
+            try {
+                storage.saveChanges(changes.habits(), changes.changed());
+            } catch (IOException | RuntimeException ex) {
+                habitService.restorePendingChanges(changes);
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.savin.microhabits.service;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Describes one change made through {@link HabitService}.
+ *
+ * @param type    what happened
+ * @param habitId the habit that changed, or null for {@link Type#RELOADED}
+ * @param date    the day whose completion changed, or null for other types
+ */
+public record HabitEvent(Type type, UUID habitId, LocalDate date) {
+
+    public enum Type {
+        ADDED,
+        REMOVED,
+        UPDATED,
+        COMPLETION_CHANGED,
+        // The whole habit list was replaced; listeners should re-read everything
+        RELOADED
+    }
+
+    static HabitEvent of(Type type, UUID habitId) {
+        return new HabitEvent(type, habitId, null);
+    }
+}
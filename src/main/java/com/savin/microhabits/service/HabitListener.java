@@ -0,0 +1,14 @@
+package com.savin.microhabits.service;
+
+import java.util.List;
+
+/**
+ * Receives changes made through {@link HabitService}.
+ * Events arrive in the order they happened, on the thread that made the change.
+ * A batch delivers all of its events in one call.
+ */
+@FunctionalInterface
+public interface HabitListener {
+
+    void habitsChanged(List<HabitEvent> events);
+}
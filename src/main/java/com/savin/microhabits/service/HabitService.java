@@ -1,81 +1,463 @@
 package com.savin.microhabits.service;
 
+import com.savin.microhabits.metrics.LatencyHistogram;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.metrics.WriteEvent;
+import com.savin.microhabits.model.DayBitSet;
 import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.storage.HabitJournal;
 
+import java.io.IOException;
+import java.time.Clock;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * Handles core habit operations (add, update, delete, and mark completion).
  * Keeps UI code separate from business logic.
+ *
+ * Safe to use from several threads. Changes are made by one writer at a time;
+ * readers get an immutable snapshot without locking. A Habit is never changed
+ * after it has been handed out: changing one publishes a modified copy, so the
+ * list from {@link #getHabitsReadOnly()} can be saved while edits go on.
  */
 public class HabitService {
 
-    private final List<Habit> habits = new ArrayList<>();
+    private static final LatencyHistogram WRITE_TIME = Metrics.histogram("service.write");
+
+    private final Clock clock;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Writer state, only touched while holding writeLock. Habits by ID, kept in insertion order
+    private final HabitTable habits = new HabitTable();
+
+    // Habits created since the last publish; only these may be changed in place.
+    // Replaced rather than cleared, as clearing costs the capacity left behind by a large load
+    private Set<Habit> unpublished = newIdentitySet();
+
+    // What readers see, replaced as a whole when a change completes
+    private volatile HabitTable.View snapshot = habits.publish();
+
+    // Optional write-ahead journal that receives every change; set under writeLock, read anywhere
+    private volatile HabitJournal journal;
+
+    private final List<HabitListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Events held back until the outermost change finishes; equal events are kept once.
+    // Like the other per-change sets, replaced after each change instead of cleared
+    private Set<HabitEvent> pendingEvents = new LinkedHashSet<>();
+
+    // Habits changed or removed since the last takePendingChanges, guarded by writeLock
+    private final Set<UUID> changedIds = new LinkedHashSet<>();
+    private final Set<UUID> removedIds = new LinkedHashSet<>();
+    private volatile boolean dirty;
+
+    // Set by compactJournal so the outermost change compacts once its changes are published
+    private boolean compactRequested;
+
+    // Habits changed or removed by the outermost change still running, to undo it if it throws
+    private Set<UUID> touchedIds = new LinkedHashSet<>();
+
+    // Stats per habit for one date. An entry is only valid for the Habit instance it was computed from,
+    // and published habits never change, so a stale entry put by a slow reader is never served
+    private final Map<UUID, CachedStats> statsCache = new ConcurrentHashMap<>();
+    private final LongAdder statsHits = new LongAdder();
+    private final LongAdder statsMisses = new LongAdder();
+    // Epoch day the cache was last used on; the cache is emptied when the local date changes
+    private volatile long statsDay = Long.MIN_VALUE;
+
+    private record CachedStats(Habit source, Stats stats) {}
+
+    /**
+     * Streak figures of one habit. Only figures a habit keeps without its history are included,
+     * so a lazily loaded habit stays undecoded; use {@link Habit#countCompleted()} for totals.
+     *
+     * @param asOf          the date the current streak ends on
+     * @param currentStreak completed days in a row ending on {@code asOf}
+     * @param longestStreak longest streak ever recorded
+     */
+    public record Stats(LocalDate asOf, int currentStreak, int longestStreak) {}
+
+    /**
+     * Changes to one habit for {@link #applyUpdates}.
+     *
+     * @param name        new name, or null to keep the current details
+     * @param description new description, used together with name
+     * @param statuses    days to set, completed or not; days it has no record of are left as they are
+     */
+    public record Update(UUID habitId, String name, String description, DayBitSet statuses) {}
+
+    /**
+     * Unsaved changes handed out by {@link #takePendingChanges()}.
+     *
+     * @param habits  the full habit list at the time the changes were taken
+     * @param changed habits added or modified since the previous take
+     * @param removed habits removed since the previous take
+     */
+    public record PendingChanges(List<Habit> habits, Set<UUID> changed, Set<UUID> removed) {
+
+        public boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public HabitService() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a service that takes "today" from the given clock.
+     */
+    public HabitService(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sends every later change to the given journal (null to stop journaling).
+     */
+    public void setJournal(HabitJournal journal) {
+        write(() -> {
+            this.journal = journal;
+            return null;
+        });
+    }
+
+    /**
+     * Registers a listener for later changes.
+     */
+    public void addListener(HabitListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(HabitListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs several changes as one: other threads see all of them or none,
+     * and listeners get their events in a single call. If the changes throw,
+     * none of them take effect.
+     * Batches may be nested; changes are published when the outermost one ends.
+     */
+    public void batch(Runnable changes) {
+        write(() -> {
+            changes.run();
+            return null;
+        });
+    }
 
     /**
      * Returns a read-only view of the current habit list.
      */
     public List<Habit> getHabitsReadOnly() {
-        return Collections.unmodifiableList(habits);
+        if (writeLock.isHeldByCurrentThread()) {
+            // Inside a batch the writer sees its own changes
+            return habits.toList();
+        }
+        return snapshot.list();
+    }
+
+    /**
+     * Returns true if something changed since the last {@link #takePendingChanges()}.
+     */
+    public boolean hasPendingChanges() {
+        return dirty;
+    }
+
+    /**
+     * Returns the unsaved changes together with a consistent copy of all habits,
+     * and starts tracking from empty again. Pass the result to
+     * {@link #restorePendingChanges} if saving it fails.
+     */
+    public PendingChanges takePendingChanges() {
+        return write(() -> {
+            PendingChanges changes = new PendingChanges(
+                    habits.toList(), Set.copyOf(changedIds), Set.copyOf(removedIds));
+            changedIds.clear();
+            removedIds.clear();
+            dirty = false;
+            return changes;
+        });
+    }
+
+    /**
+     * Marks changes from a failed save as unsaved again.
+     */
+    public void restorePendingChanges(PendingChanges changes) {
+        write(() -> {
+            for (UUID id : changes.changed()) {
+                if (habits.get(id) != null) {
+                    changedIds.add(id);
+                }
+            }
+            for (UUID id : changes.removed()) {
+                if (habits.get(id) == null) {
+                    removedIds.add(id);
+                }
+            }
+            dirty = !changedIds.isEmpty() || !removedIds.isEmpty();
+            return null;
+        });
     }
 
     /**
      * Replaces the current list with loaded data (used after loading from storage).
+     * The loaded state counts as saved.
      */
     public void replaceAll(List<Habit> loaded) {
-        habits.clear();
-        if (loaded != null) {
-            habits.addAll(loaded);
-        }
+        write(() -> {
+            habits.clear();
+            unpublished = newIdentitySet();
+            changedIds.clear();
+            removedIds.clear();
+            dirty = false;
+            statsCache.clear();
+            if (loaded != null) {
+                for (Habit habit : loaded) {
+                    habits.put(habit);
+                    unpublished.add(habit);
+                }
+            }
+            fire(HabitEvent.of(HabitEvent.Type.RELOADED, null));
+            return null;
+        });
+    }
+
+    /**
+     * Adds habits read from elsewhere in one batch, keeping their IDs and histories.
+     * A habit whose ID already exists replaces the current one.
+     * The service takes ownership of the given instances.
+     */
+    public void importHabits(List<Habit> imported) {
+        write(() -> {
+            for (Habit habit : imported) {
+                boolean existed = habits.put(habit) != null;
+                unpublished.add(habit);
+                removedIds.remove(habit.getId());
+                statsCache.remove(habit.getId());
+                markChanged(habit.getId());
+                if (journal != null) {
+                    if (existed) {
+                        // Drops the old history on replay before the imported one is applied
+                        journal.recordRemoved(habit.getId());
+                    }
+                    journal.recordDetails(habit);
+                    habit.forEachDay((day, completed) ->
+                            journal.recordStatus(habit.getId(), LocalDate.ofEpochDay(day), completed));
+                }
+                fire(HabitEvent.of(existed ? HabitEvent.Type.UPDATED : HabitEvent.Type.ADDED, habit.getId()));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Applies many changes as one batch, for bulk imports: a habit that does not exist yet is
+     * created with the update's ID, details replace the current ones and every status in the
+     * update overwrites that day. Each change is journaled like a single edit would be.
+     * An update without a name for a habit that does not exist, e.g. one removed by another
+     * thread since the caller looked it up, is skipped and the rest are still applied.
+     *
+     * @return IDs of the skipped updates, empty if all were applied
+     */
+    public Set<UUID> applyUpdates(List<Update> updates) {
+        return write(() -> {
+            Set<UUID> skipped = new HashSet<>();
+            for (Update update : updates) {
+                UUID id = update.habitId();
+                Habit habit = habits.get(id);
+                boolean added = habit == null;
+                if (added) {
+                    if (update.name() == null) {
+                        skipped.add(id);
+                        continue;
+                    }
+                    habit = new Habit(id, update.name(), update.description());
+                    habits.put(habit);
+                    unpublished.add(habit);
+                } else {
+                    habit = writable(id);
+                    if (update.name() != null) {
+                        habit.setName(update.name());
+                        habit.setDescription(update.description());
+                    }
+                }
+
+                Habit target = habit;
+                update.statuses().forEach(target::markCompletedEpochDay);
+                removedIds.remove(id);
+                statsCache.remove(id);
+                markChanged(id);
+                if (journal != null) {
+                    if (added || update.name() != null) {
+                        journal.recordDetails(habit);
+                    }
+                    journal.recordStatuses(id, update.statuses());
+                }
+                fire(HabitEvent.of(added ? HabitEvent.Type.ADDED : HabitEvent.Type.UPDATED, id));
+            }
+            return skipped;
+        });
     }
 
     /**
      * Creates and stores a new habit.
      */
     public Habit addHabit(String name, String description) {
-        Habit habit = new Habit(name, description);
-        habits.add(habit);
-        return habit;
+        return write(() -> {
+            Habit habit = new Habit(name, description);
+            habits.put(habit);
+            unpublished.add(habit);
+            markChanged(habit.getId());
+            if (journal != null) {
+                journal.recordDetails(habit);
+            }
+            fire(HabitEvent.of(HabitEvent.Type.ADDED, habit.getId()));
+            return habit;
+        });
     }
 
     /**
      * Removes a habit by ID. If it does not exist, nothing happens.
      */
     public void removeHabit(UUID habitId) {
-        habits.removeIf(h -> h.getId().equals(habitId));
+        write(() -> {
+            Habit removed = habits.remove(habitId);
+            if (removed != null) {
+                unpublished.remove(removed);
+                changedIds.remove(habitId);
+                removedIds.add(habitId);
+                touchedIds.add(habitId);
+                statsCache.remove(habitId);
+                dirty = true;
+                if (journal != null) {
+                    journal.recordRemoved(habitId);
+                }
+                fire(HabitEvent.of(HabitEvent.Type.REMOVED, habitId));
+            }
+            return null;
+        });
     }
 
     /**
      * Finds a habit by ID.
      */
     public Optional<Habit> findById(UUID habitId) {
-        return habits.stream()
-                .filter(h -> h.getId().equals(habitId))
-                .findFirst();
+        if (writeLock.isHeldByCurrentThread()) {
+            return Optional.ofNullable(habits.get(habitId));
+        }
+        return Optional.ofNullable(snapshot.get(habitId));
     }
 
     /**
      * Marks today's completion status for the selected habit.
      */
     public void markToday(UUID habitId, boolean completed) {
-        Habit habit = findById(habitId)
-                .orElseThrow(() -> new IllegalArgumentException("Habit not found."));
-        habit.markCompleted(LocalDate.now(), completed);
+        write(() -> {
+            Habit habit = writable(habitId);
+            LocalDate today = LocalDate.now(clock);
+            habit.markCompleted(today, completed);
+            statsCache.remove(habitId);
+            markChanged(habitId);
+            if (journal != null) {
+                journal.recordStatus(habitId, today, completed);
+            }
+            fire(new HabitEvent(HabitEvent.Type.COMPLETION_CHANGED, habitId, today));
+            return null;
+        });
     }
 
     /**
      * Updates the name and description of a habit.
      */
     public void updateHabit(UUID habitId, String newName, String newDescription) {
-        Habit habit = findById(habitId)
-                .orElseThrow(() -> new IllegalArgumentException("Habit not found."));
-        habit.setName(newName);
-        habit.setDescription(newDescription);
+        write(() -> {
+            Habit before = habits.get(habitId);
+            Habit habit = writable(habitId);
+            habit.setName(newName);
+            habit.setDescription(newDescription);
+            // Names do not affect stats, so cached stats move over to the copy
+            statsCache.computeIfPresent(habitId,
+                    (id, cached) -> cached.source() == before ? new CachedStats(habit, cached.stats()) : cached);
+            markChanged(habitId);
+            if (journal != null) {
+                journal.recordDetails(habit);
+            }
+            fire(HabitEvent.of(HabitEvent.Type.UPDATED, habitId));
+            return null;
+        });
+    }
+
+    /**
+     * Returns the streak figures of a habit as of today, from the cache when possible.
+     */
+    public Optional<Stats> getStatsToday(UUID habitId) {
+        return getStats(habitId, LocalDate.now(clock));
+    }
+
+    /**
+     * Returns the streak figures of a habit as of a date. The last date asked for is cached
+     * per habit until the habit's history changes or the local date rolls over.
+     */
+    public Optional<Stats> getStats(UUID habitId, LocalDate asOf) {
+        rollOverStatsIfNeeded();
+        Habit habit = findById(habitId).orElse(null);
+        if (habit == null) {
+            return Optional.empty();
+        }
+
+        CachedStats cached = statsCache.get(habitId);
+        if (cached != null && cached.source() == habit && cached.stats().asOf().equals(asOf)) {
+            statsHits.increment();
+            return Optional.of(cached.stats());
+        }
+
+        statsMisses.increment();
+        Stats stats = new Stats(asOf, habit.getStreak(asOf), habit.getLongestStreak());
+        statsCache.put(habitId, new CachedStats(habit, stats));
+        return Optional.of(stats);
+    }
+
+    public long getStatsCacheHits() {
+        return statsHits.sum();
+    }
+
+    public long getStatsCacheMisses() {
+        return statsMisses.sum();
+    }
+
+    /**
+     * Returns why the journal cannot currently write, if it cannot. Changes made meanwhile are kept
+     * and written once it recovers, but are not on disk until then, so a full save is the fallback.
+     */
+    public Optional<IOException> journalFailure() {
+        HabitJournal current = journal;
+        return current == null ? Optional.empty() : Optional.ofNullable(current.failure());
+    }
+
+    /**
+     * Folds the journal into a new snapshot now instead of waiting for it to grow.
+     * Does nothing without a journal.
+     */
+    public void compactJournal() {
+        write(() -> {
+            compactRequested = true;
+            return null;
+        });
     }
 
     /**
@@ -84,4 +466,151 @@ public class HabitService {
     public void deleteHabit(UUID habitId) {
         removeHabit(habitId);
     }
+
+    // Entries for yesterday would never be asked for again once the date changes
+    private void rollOverStatsIfNeeded() {
+        long today = LocalDate.now(clock).toEpochDay();
+        if (today != statsDay) {
+            statsDay = today;
+            statsCache.clear();
+        }
+    }
+
+    // Runs a change under the write lock; the outermost call publishes the result and sends events,
+    // or undoes everything if the change threw
+    private <T> T write(Supplier<T> change) {
+        List<HabitEvent> events = List.of();
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        long start = System.nanoTime();
+        writeLock.lock();
+        boolean completed = false;
+        try {
+            T result = change.get();
+            completed = true;
+            return result;
+        } finally {
+            boolean outermost = writeLock.getHoldCount() == 1;
+            try {
+                if (outermost) {
+                    if (completed) {
+                        publish();
+                    } else {
+                        rollBack();
+                    }
+                    compactJournalIfNeeded();
+                    if (!touchedIds.isEmpty()) {
+                        touchedIds = new LinkedHashSet<>();
+                    }
+                    if (!pendingEvents.isEmpty()) {
+                        events = List.copyOf(pendingEvents);
+                        pendingEvents = new LinkedHashSet<>();
+                    }
+                    event.habits = habits.size();
+                }
+            } finally {
+                // Released even if publishing or rolling back throws, or every later change would hang
+                writeLock.unlock();
+            }
+            if (outermost) {
+                // Covers waiting for the lock and publishing, not the listeners
+                WRITE_TIME.recordSince(start);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.events = events.size();
+                    event.commit();
+                }
+            }
+            deliver(events);
+        }
+    }
+
+    // Returns the habit to change, copying it first if readers may already hold it
+    private Habit writable(UUID habitId) {
+        Habit habit = habits.get(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Habit not found.");
+        }
+        if (!unpublished.contains(habit)) {
+            habit = habit.copy();
+            habits.put(habit);
+            unpublished.add(habit);
+        }
+        return habit;
+    }
+
+    private static Set<Habit> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private void markChanged(UUID habitId) {
+        changedIds.add(habitId);
+        touchedIds.add(habitId);
+        dirty = true;
+    }
+
+    // Every change fires an event, so no pending events means nothing to publish
+    private void publish() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        snapshot = habits.publish();
+        if (!unpublished.isEmpty()) {
+            unpublished = newIdentitySet();
+        }
+    }
+
+    // Puts the writer state back to what readers see. Touched habits stay marked as unsaved,
+    // and the journal gets their restored state so a replay does not bring back half a change.
+    private void rollBack() {
+        habits.reset(snapshot);
+        unpublished = newIdentitySet();
+        pendingEvents = new LinkedHashSet<>();
+        for (UUID id : touchedIds) {
+            Habit habit = habits.get(id);
+            if (habit != null) {
+                changedIds.add(id);
+                removedIds.remove(id);
+            } else {
+                changedIds.remove(id);
+                removedIds.add(id);
+            }
+            if (journal != null) {
+                journal.recordRemoved(id);
+                if (habit != null) {
+                    journal.recordDetails(habit);
+                    habit.forEachDay((day, completed) -> journal.recordStatus(id, LocalDate.ofEpochDay(day), completed));
+                }
+            }
+        }
+        if (!touchedIds.isEmpty()) {
+            dirty = true;
+        }
+    }
+
+    // Hands the journal the state just published once it has grown large enough, or when asked to.
+    // The published list never changes, so nothing is copied; runs after publish so it matches the records
+    private void compactJournalIfNeeded() {
+        if (journal != null && (compactRequested || journal.needsCompaction())) {
+            journal.compact(snapshot.list());
+        }
+        compactRequested = false;
+    }
+
+    private void fire(HabitEvent event) {
+        if (event.type() == HabitEvent.Type.RELOADED) {
+            // A reload supersedes everything queued before it
+            pendingEvents.clear();
+        }
+        pendingEvents.add(event);
+    }
+
+    private void deliver(List<HabitEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (HabitListener listener : listeners) {
+            listener.habitsChanged(events);
+        }
+    }
 }
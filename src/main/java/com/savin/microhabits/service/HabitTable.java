@@ -0,0 +1,315 @@
+package com.savin.microhabits.service;
+
+import com.savin.microhabits.model.Habit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Habits by ID in insertion order, changed by HabitService's writer and handed to readers
+ * through {@link #publish()}.
+ *
+ * Publishing takes constant time: the returned {@link View} shares the table's arrays, which are
+ * split into chunks of {@value #CHUNK} entries, and the writer copies a chunk the first time it
+ * changes it after a publish. A change between two publishes therefore copies a few chunks
+ * instead of the whole map. Not thread-safe; views are immutable.
+ */
+final class HabitTable {
+
+    static final int CHUNK = 256;
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_MASK = CHUNK - 1;
+
+    // Index entries: a slot number, or one of these
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+
+    // Habits in insertion order, null where one was removed
+    private Habit[][] slots;
+    private int slotCount;
+    private int size;
+
+    // Open addressing table of slot numbers, probed linearly from the ID's hash
+    private int[][] index;
+    private int indexMask;
+    // Entries that are not EMPTY, including DELETED ones
+    private int indexUsed;
+
+    // A chunk belongs to the writer if it was created or copied in the current generation;
+    // publishing starts a new one, so chunks seen by a view are copied before they change
+    private int generation;
+    private int[] slotChunkGeneration;
+    private int[] indexChunkGeneration;
+    private boolean slotsOwned;
+    private boolean indexOwned;
+
+    HabitTable() {
+        rebuild(List.of());
+    }
+
+    /**
+     * Immutable state of the table at one publish.
+     */
+    static final class View {
+
+        private final Habit[][] slots;
+        private final int slotCount;
+        private final int size;
+        private final int[][] index;
+        private final int indexMask;
+
+        // Built on first use; racing readers build equal lists
+        private List<Habit> list;
+
+        private View(HabitTable table) {
+            this.slots = table.slots;
+            this.slotCount = table.slotCount;
+            this.size = table.size;
+            this.index = table.index;
+            this.indexMask = table.indexMask;
+        }
+
+        Habit get(UUID id) {
+            int position = find(slots, index, indexMask, id);
+            return position < 0 ? null : slot(slots, entry(index, position));
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Returns the habits in insertion order as an unmodifiable list.
+         */
+        List<Habit> list() {
+            List<Habit> result = list;
+            if (result == null) {
+                result = Collections.unmodifiableList(Arrays.asList(collect(slots, slotCount, size)));
+                list = result;
+            }
+            return result;
+        }
+    }
+
+    Habit get(UUID id) {
+        int position = find(slots, index, indexMask, id);
+        return position < 0 ? null : slot(slots, entry(index, position));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a habit at the end, or replaces the one with the same ID in its place.
+     * Returns the replaced habit, or null.
+     */
+    Habit put(Habit habit) {
+        UUID id = habit.getId();
+        int position = find(slots, index, indexMask, id);
+        if (position >= 0) {
+            int slot = entry(index, position);
+            Habit previous = slot(slots, slot);
+            setSlot(slot, habit);
+            return previous;
+        }
+
+        int slot = slotCount;
+        setSlot(slot, habit);
+        slotCount++;
+        size++;
+        int free = freePosition(id);
+        if (entry(index, free) == EMPTY) {
+            indexUsed++;
+        }
+        setEntry(free, slot);
+        if (indexUsed * 2 > indexMask + 1) {
+            rebuild(toList());
+        }
+        return null;
+    }
+
+    /**
+     * Removes a habit by ID. Returns it, or null if there was none.
+     */
+    Habit remove(UUID id) {
+        int position = find(slots, index, indexMask, id);
+        if (position < 0) {
+            return null;
+        }
+        int slot = entry(index, position);
+        Habit removed = slot(slots, slot);
+        setSlot(slot, null);
+        setEntry(position, DELETED);
+        size--;
+        // Mostly holes: pack the slots so lists and lookups stay proportional to the live habits
+        if (slotCount > CHUNK && slotCount > 2 * size) {
+            rebuild(toList());
+        }
+        return removed;
+    }
+
+    void clear() {
+        rebuild(List.of());
+    }
+
+    /**
+     * Returns the habits in insertion order as a new list.
+     */
+    List<Habit> toList() {
+        return Arrays.asList(collect(slots, slotCount, size));
+    }
+
+    /**
+     * Returns an immutable view of the current state.
+     */
+    View publish() {
+        View view = new View(this);
+        startGeneration();
+        return view;
+    }
+
+    /**
+     * Goes back to the state of a view published by this table, dropping later changes.
+     */
+    void reset(View view) {
+        slots = view.slots;
+        slotCount = view.slotCount;
+        size = view.size;
+        index = view.index;
+        indexMask = view.indexMask;
+        indexUsed = 0;
+        for (int[] chunk : index) {
+            for (int entry : chunk) {
+                if (entry != EMPTY) {
+                    indexUsed++;
+                }
+            }
+        }
+        slotChunkGeneration = Arrays.copyOf(slotChunkGeneration, Math.max(slotChunkGeneration.length, slots.length));
+        indexChunkGeneration = Arrays.copyOf(indexChunkGeneration, Math.max(indexChunkGeneration.length, index.length));
+        startGeneration();
+    }
+
+    private void startGeneration() {
+        generation++;
+        slotsOwned = false;
+        indexOwned = false;
+    }
+
+    private void setSlot(int slot, Habit habit) {
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(1, slots.length * 2));
+            slotChunkGeneration = Arrays.copyOf(slotChunkGeneration, slots.length);
+            slotsOwned = true;
+        } else if (!slotsOwned) {
+            slots = slots.clone();
+            slotsOwned = true;
+        }
+        if (slots[chunk] == null) {
+            slots[chunk] = new Habit[CHUNK];
+            slotChunkGeneration[chunk] = generation;
+        } else if (slotChunkGeneration[chunk] != generation) {
+            slots[chunk] = slots[chunk].clone();
+            slotChunkGeneration[chunk] = generation;
+        }
+        slots[chunk][slot & CHUNK_MASK] = habit;
+    }
+
+    private void setEntry(int position, int value) {
+        int chunk = position >>> CHUNK_BITS;
+        if (!indexOwned) {
+            index = index.clone();
+            indexOwned = true;
+        }
+        if (indexChunkGeneration[chunk] != generation) {
+            index[chunk] = index[chunk].clone();
+            indexChunkGeneration[chunk] = generation;
+        }
+        index[chunk][position & CHUNK_MASK] = value;
+    }
+
+    // First EMPTY or DELETED position on the probe path of an ID that is not in the table
+    private int freePosition(UUID id) {
+        int position = hash(id) & indexMask;
+        while (entry(index, position) >= 0) {
+            position = (position + 1) & indexMask;
+        }
+        return position;
+    }
+
+    // Fresh arrays holding the given habits, with the index at most a quarter full
+    private void rebuild(List<Habit> habits) {
+        int capacity = CHUNK;
+        while (capacity < habits.size() * 4) {
+            capacity <<= 1;
+        }
+        index = new int[capacity >>> CHUNK_BITS][CHUNK];
+        for (int[] chunk : index) {
+            Arrays.fill(chunk, EMPTY);
+        }
+        indexMask = capacity - 1;
+        indexUsed = 0;
+        slots = new Habit[Math.max(1, (habits.size() + CHUNK - 1) >>> CHUNK_BITS)][];
+        slotCount = 0;
+        size = 0;
+
+        generation++;
+        slotChunkGeneration = new int[slots.length];
+        indexChunkGeneration = new int[index.length];
+        Arrays.fill(indexChunkGeneration, generation);
+        slotsOwned = true;
+        indexOwned = true;
+
+        for (Habit habit : habits) {
+            int slot = slotCount++;
+            setSlot(slot, habit);
+            setEntry(freePosition(habit.getId()), slot);
+            indexUsed++;
+            size++;
+        }
+    }
+
+    private static int find(Habit[][] slots, int[][] index, int mask, UUID id) {
+        int position = hash(id) & mask;
+        while (true) {
+            int entry = entry(index, position);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry >= 0 && slot(slots, entry).getId().equals(id)) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private static int hash(UUID id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int entry(int[][] index, int position) {
+        return index[position >>> CHUNK_BITS][position & CHUNK_MASK];
+    }
+
+    private static Habit slot(Habit[][] slots, int slot) {
+        return slots[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    private static Habit[] collect(Habit[][] slots, int slotCount, int size) {
+        Habit[] result = new Habit[size];
+        int n = 0;
+        for (int i = 0; i < slotCount; i++) {
+            Habit habit = slot(slots, i);
+            if (habit != null) {
+                result[n++] = habit;
+            }
+        }
+        return result;
+    }
+}
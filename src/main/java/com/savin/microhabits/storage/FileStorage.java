@@ -1,134 +1,452 @@
 package com.savin.microhabits.storage;
 
+import com.savin.microhabits.metrics.Counter;
+import com.savin.microhabits.metrics.LatencyHistogram;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.metrics.StorageEvent;
 import com.savin.microhabits.model.Habit;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 /**
- * Handles saving and loading habits using a simple text-based format.
+ * Handles saving and loading habits.
+ * Snapshots are written in the configured {@link SaveFormat}; loading detects the format from the file.
  */
 public class FileStorage {
 
-    private static final String VERSION_LINE = "MICROHABITS_V1";
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+    private static final int IO_BUFFER_BYTES = 64 * 1024;
+
+    // Below this size, mapping costs more than it saves
+    private static final long AUTO_MAP_BYTES = 32L * 1024 * 1024;
+
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("storage.save");
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("storage.load");
+    private static final Counter SAVED_BYTES = Metrics.counter("storage.save.bytes");
+    private static final Counter LOADED_BYTES = Metrics.counter("storage.load.bytes");
+
     private final Path filePath;
+    private final SaveFormat format;
+    private final Path tempPath;
+    private final Path backupPath;
+    private final Path corruptPath;
+    private final Path journalPath;
+
+    // Index and segment state of the V3 layout, guarded by this
+    private final SegmentedStore segments;
+
+    private volatile LoadMode loadMode = LoadMode.AUTO;
+    private volatile int loadThreads = Runtime.getRuntime().availableProcessors();
+    private volatile boolean lazyHistory;
+
+    // Journal opened by openJournal, if any
+    private HabitJournal journal;
 
     public FileStorage(Path filePath) {
+        this(filePath, SaveFormat.V1_TEXT);
+    }
+
+    public FileStorage(Path filePath, SaveFormat format) {
         this.filePath = Objects.requireNonNull(filePath, "filePath");
+        this.format = Objects.requireNonNull(format, "format");
+        this.tempPath = sibling(".tmp");
+        this.backupPath = sibling(".bak");
+        this.corruptPath = sibling(".corrupt");
+        this.journalPath = sibling(".journal");
+        this.segments = new SegmentedStore(filePath, backupPath, tempPath, this::replaceWithTemp, IO_BUFFER_BYTES);
+    }
+
+    private Path sibling(String suffix) {
+        return filePath.resolveSibling(filePath.getFileName() + suffix);
+    }
+
+    /**
+     * Chooses how V1 text snapshots are read by {@link #load()}.
+     */
+    public void setLoadMode(LoadMode loadMode) {
+        this.loadMode = Objects.requireNonNull(loadMode, "loadMode");
+    }
+
+    /**
+     * Sets the number of threads used by {@link LoadMode#PARALLEL}.
+     */
+    public void setLoadThreads(int loadThreads) {
+        if (loadThreads < 1) {
+            throw new IllegalArgumentException("loadThreads must be at least 1.");
+        }
+        this.loadThreads = loadThreads;
+    }
+
+    /**
+     * With lazy history, {@link #load()} of a V2 snapshot decodes only each habit's summary;
+     * its completion history is decoded the first time something needs it.
+     * Startup time then no longer grows with the length of the history.
+     */
+    public void setLazyHistory(boolean lazyHistory) {
+        this.lazyHistory = lazyHistory;
+    }
+
+    /**
+     * Opens the change journal next to the save file.
+     * Changes recorded there are replayed by {@link #load()} on top of the last snapshot.
+     */
+    public synchronized HabitJournal openJournal() throws IOException {
+        if (journal == null) {
+            Files.createDirectories(filePath.getParent());
+            journal = new HabitJournal(this, journalPath,
+                    HabitJournal.DEFAULT_COMPACT_BYTES, HabitJournal.DEFAULT_SYNC_MILLIS);
+        }
+        return journal;
+    }
+
+    /**
+     * Flushes and closes the journal. Returns false if no journal was open.
+     */
+    public boolean closeJournal() throws IOException {
+        HabitJournal open;
+        synchronized (this) {
+            open = journal;
+            journal = null;
+        }
+        if (open == null) {
+            return false;
+        }
+        open.close();
+        return true;
     }
 
     /**
      * Saves all habits to disk.
+     * The snapshot is written to a temp file, forced to disk and renamed over the old one,
+     * so a crash mid-save never leaves a truncated file. The previous snapshot is kept as a backup.
+     */
+    public synchronized void save(List<Habit> habits) throws IOException {
+        recordSave("save", habits.size(), () -> format == SaveFormat.V3_SEGMENTED
+                ? segments.writeAll(habits)
+                : writeSnapshot(habits));
+    }
+
+    /**
+     * Saves the habits, re-encoding only those in {@code changed} when the format allows it.
+     * With {@link SaveFormat#V3_SEGMENTED} unchanged habits are not written again, so the cost
+     * follows the amount of change; other formats write everything, like {@link #save}.
+     *
+     * @param habits  all habits, in display order
+     * @param changed habits added or modified since the last save through this storage
      */
-    public void save(List<Habit> habits) throws IOException {
+    public synchronized void saveChanges(List<Habit> habits, Set<UUID> changed) throws IOException {
+        if (format != SaveFormat.V3_SEGMENTED) {
+            save(habits);
+            return;
+        }
+        recordSave("delta", habits.size(), () -> segments.writeChanges(habits, changed));
+    }
+
+    @FunctionalInterface
+    private interface SaveAction {
+        long write() throws IOException;
+    }
+
+    // Runs a save and records its time and byte count; the action returns the bytes written
+    private void recordSave(String operation, int habitCount, SaveAction action) throws IOException {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        long start = System.nanoTime();
         Files.createDirectories(filePath.getParent());
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(VERSION_LINE).append("\n");
-
-        for (Habit h : habits) {
-            sb.append("H|")
-              .append(h.getId()).append("|")
-              .append(escape(h.getName())).append("|")
-              .append(escape(h.getDescription()))
-              .append("\n");
-
-            // Save daily completion status
-            for (var entry : h.getDailyStatusReadOnly().entrySet()) {
-                LocalDate date = entry.getKey();
-                boolean completed = Boolean.TRUE.equals(entry.getValue());
-                sb.append("S|")
-                  .append(date).append("|")
-                  .append(completed ? "1" : "0")
-                  .append("\n");
-            }
-            sb.append("END\n");
+        long bytes = action.write();
+
+        SAVE_TIME.recordSince(start);
+        SAVED_BYTES.add(bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.path = filePath.toString();
+            event.habits = habitCount;
+            event.bytes = bytes;
+            event.commit();
         }
+    }
 
-        Files.writeString(
-                filePath,
-                sb.toString(),
-                StandardCharsets.UTF_8,
+    private long writeSnapshot(List<Habit> habits) throws IOException {
+        long bytes;
+        try (FileChannel channel = FileChannel.open(tempPath,
                 StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING
-        );
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            if (format == SaveFormat.V2_BINARY) {
+                new V2BinaryWriter(new BufferedOutputStream(stream, IO_BUFFER_BYTES)).write(habits);
+            } else {
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                        stream, StandardCharsets.UTF_8.newEncoder()), WRITE_BUFFER_CHARS);
+                new V1TextWriter(out).write(habits);
+                out.flush();
+            }
+            channel.force(true);
+            bytes = channel.size();
+        }
+
+        replaceWithTemp();
+        return bytes;
+    }
+
+    // Keeps the current snapshot as the backup, then atomically swaps in the temp file
+    private void replaceWithTemp() throws IOException {
+        if (Files.exists(filePath)) {
+            Files.deleteIfExists(backupPath);
+            try {
+                Files.createLink(backupPath, filePath);
+            } catch (UnsupportedOperationException | IOException ex) {
+                Files.copy(filePath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        try {
+            Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory();
+    }
+
+    // Makes the rename itself durable; not every platform allows opening a directory
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(filePath.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // Best effort only
+        }
     }
 
     /**
-     * Loads habits from disk.
+     * Loads habits from disk: the last snapshot plus any journaled changes.
+     * The file is parsed as a stream, so memory use does not grow with the file size.
      */
     public List<Habit> load() throws IOException {
-        if (!Files.exists(filePath)) {
-            return new ArrayList<>();
-        }
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        long start = System.nanoTime();
+        List<Habit> loaded = loadWithJournal(false);
 
-        List<String> lines = Files.readAllLines(filePath, StandardCharsets.UTF_8);
-        if (lines.isEmpty() || !VERSION_LINE.equals(lines.get(0).trim())) {
-            throw new IOException("Unsupported save file format.");
+        long bytes = sizeIfExists(filePath) + sizeIfExists(journalPath)
+                + sizeIfExists(HabitJournal.rotatedPath(journalPath));
+        LOAD_TIME.recordSince(start);
+        LOADED_BYTES.add(bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "load";
+            event.path = filePath.toString();
+            event.habits = loaded.size();
+            event.bytes = bytes;
+            event.commit();
         }
+        return loaded;
+    }
 
-        List<Habit> result = new ArrayList<>();
-        Habit current = null;
+    /**
+     * Loads habits like {@link #load()}, snapshot and journals, without changing anything on disk:
+     * an unreadable save file is not moved aside and no open journal is flushed.
+     * For reading another app's save file, e.g. to import it.
+     */
+    public List<Habit> loadReadOnly() throws IOException {
+        return loadWithJournal(true);
+    }
 
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i).trim();
-            if (line.isEmpty()) {
-                continue;
-            }
+    private static long sizeIfExists(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
 
-            if (line.startsWith("H|")) {
-                String[] parts = line.split("\\|", -1);
-                UUID id = UUID.fromString(parts[1]);
-                String name = unescape(parts[2]);
-                String desc = unescape(parts.length >= 4 ? parts[3] : "");
+    private List<Habit> loadWithJournal(boolean readOnly) throws IOException {
+        HabitJournal open;
+        synchronized (this) {
+            open = journal;
+        }
+        if (open != null && !readOnly) {
+            open.flush();
+        }
 
-                current = new Habit(id, name, desc);
+        List<Habit> snapshot = loadSnapshot(readOnly);
+        Path rotated = HabitJournal.rotatedPath(journalPath);
+        if (!Files.exists(rotated) && !Files.exists(journalPath)) {
+            return snapshot;
+        }
 
-            } else if (line.startsWith("S|")) {
-                if (current == null) {
-                    throw new IOException("Status entry found before habit header.");
-                }
+        Map<UUID, Habit> habits = new LinkedHashMap<>();
+        for (Habit h : snapshot) {
+            habits.put(h.getId(), h);
+        }
+        Set<UUID> touched = new HashSet<>();
+        HabitJournal.replay(rotated, habits, touched);
+        HabitJournal.replay(journalPath, habits, touched);
+        synchronized (this) {
+            // Replayed changes are not in the segments yet
+            segments.forget(touched);
+        }
+        return new ArrayList<>(habits.values());
+    }
 
-                String[] parts = line.split("\\|", -1);
-                LocalDate date = LocalDate.parse(parts[1]);
-                boolean completed = "1".equals(parts[2]);
-                current.markCompleted(date, completed);
+    // Reads the snapshot, falling back to the backup if the main file is missing or unreadable.
+    // Unless read-only, an unreadable main file is renamed to .corrupt: left in place, the next
+    // save would make it the backup and replace the only good copy.
+    private synchronized List<Habit> loadSnapshot(boolean readOnly) throws IOException {
+        if (!Files.exists(filePath)) {
+            return Files.exists(backupPath) ? readSnapshot(backupPath) : new ArrayList<>();
+        }
+
+        try {
+            return readSnapshot(filePath);
+        } catch (IOException | RuntimeException ex) {
+            if (!Files.exists(backupPath)) {
+                throw ex;
+            }
+            System.err.println("Save file unreadable, using backup: " + ex.getMessage());
+            List<Habit> habits;
+            try {
+                habits = readSnapshot(backupPath);
+            } catch (IOException | RuntimeException backupEx) {
+                ex.addSuppressed(backupEx);
+                throw ex;
+            }
+            if (!readOnly) {
+                Files.move(filePath, corruptPath, StandardCopyOption.REPLACE_EXISTING);
+                syncDirectory();
+            }
+            return habits;
+        }
+    }
 
-            } else if (line.equals("END")) {
-                if (current != null) {
-                    result.add(current);
-                }
-                current = null;
+    // Picks the reader from the first bytes of the file
+    private List<Habit> readSnapshot(Path path) throws IOException {
+        LoadMode mode;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), IO_BUFFER_BYTES)) {
+            in.mark(V2BinaryWriter.MAGIC.length);
+            byte[] head = in.readNBytes(V2BinaryWriter.MAGIC.length);
+            in.reset();
 
-            } else {
-                throw new IOException("Invalid line in save file: " + line);
+            if (SegmentedStore.hasMagic(head, head.length)) {
+                return segments.read(path, lazyHistory);
+            }
+            if (V2BinaryReader.hasMagic(head, head.length)) {
+                return new V2BinaryReader(in, lazyHistory).read();
             }
+            mode = effectiveMode(path);
+            if (mode == LoadMode.STREAMING) {
+                CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+                return new V1TextReader(new InputStreamReader(in, decoder)).read();
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return mode == LoadMode.PARALLEL
+                    ? new ParallelV1Loader(channel, loadThreads).read()
+                    : new MappedV1Reader(channel).read();
         }
+    }
 
-        return result;
+    private LoadMode effectiveMode(Path path) throws IOException {
+        if (loadMode != LoadMode.AUTO) {
+            return loadMode;
+        }
+        if (Files.size(path) < AUTO_MAP_BYTES) {
+            return LoadMode.STREAMING;
+        }
+        return loadThreads > 1 ? LoadMode.PARALLEL : LoadMode.MAPPED;
+    }
+
+    /**
+     * Converts an existing save file, including its journal, into this storage's file and format.
+     * Does nothing if this storage's file already exists or the source is missing.
+     * The source files are left in place. Returns true if a conversion happened.
+     */
+    public boolean upgradeFrom(Path sourceFile) throws IOException {
+        if (Files.exists(filePath) || !Files.exists(sourceFile)) {
+            return false;
+        }
+        save(new FileStorage(sourceFile).loadReadOnly());
+        return true;
     }
 
     // Escapes special characters for storage
-    private static String escape(String s) {
+    static String escape(String s) {
         if (s == null) return "";
-        return s.replace("\\", "\\\\")
-                .replace("\n", "\\n")
-                .replace("|", "\\p");
+
+        int first = firstSpecial(s);
+        if (first < 0) return s;
+
+        StringBuilder sb = new StringBuilder(s.length() + 8).append(s, 0, first);
+        for (int i = first; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '|' -> sb.append("\\p");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int firstSpecial(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == '\n' || c == '|') return i;
+        }
+        return -1;
     }
 
     // Restores escaped characters
-    private static String unescape(String s) {
+    static String unescape(String s) {
         if (s == null) return "";
-        return s.replace("\\p", "|")
-                .replace("\\n", "\n")
-                .replace("\\\\", "\\");
+        int first = s.indexOf('\\');
+        if (first < 0) return s;
+
+        // One pass, so an escaped backslash followed by 'n' or 'p' stays a backslash
+        StringBuilder sb = new StringBuilder(s.length()).append(s, 0, first);
+        for (int i = first; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = s.charAt(++i);
+            switch (next) {
+                case '\\' -> sb.append('\\');
+                case 'n' -> sb.append('\n');
+                case 'p' -> sb.append('|');
+                default -> sb.append(c).append(next);
+            }
+        }
+        return sb.toString();
     }
 }
@@ -0,0 +1,441 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.DayBitSet;
+import com.savin.microhabits.model.Habit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of habit changes, kept next to the snapshot file.
+ * Records are buffered in memory and written with one fsync per sync interval,
+ * so a crash loses at most the last interval instead of the whole session.
+ *
+ * Record lines (fields escaped like the snapshot):
+ * A|id|name|description  - habit added or its details changed
+ * S|id|yyyy-MM-dd|0/1    - completion status for one day
+ * R|id                   - habit removed
+ *
+ * Every record sets state rather than changing it, so replaying a journal over
+ * a snapshot that already contains some of its records gives the same result.
+ *
+ * Records that fail to be written are kept and written first by the next sync, so a
+ * temporary disk error delays them instead of losing them; {@link #failure()} reports it meanwhile.
+ */
+public final class HabitJournal implements Closeable {
+
+    static final String VERSION_LINE = "MICROHABITS_JOURNAL_V1";
+
+    static final long DEFAULT_COMPACT_BYTES = 4L * 1024 * 1024;
+    static final long DEFAULT_SYNC_MILLIS = 200;
+
+    private final FileStorage storage;
+    private final Path journalPath;
+    private final Path rotatedPath;
+    private final long compactThreshold;
+
+    // Guards pending, size, compacting, touched and the cut
+    private final Object lock = new Object();
+    private StringBuilder pending = new StringBuilder();
+    private long size;
+    private boolean compacting;
+    // Habits with records since the last cut; only these need writing again when compacting
+    private Set<UUID> touched = new HashSet<>();
+
+    // Records before a requested compaction, the state they lead to and the habits they touched;
+    // taken by the next sync, which rotates the journal before writing anything appended after the cut
+    private String cutTail;
+    private List<Habit> cutSnapshot;
+    private Set<UUID> cutTouched;
+
+    // Single writer thread, so syncs and rotation never overlap
+    private final ScheduledExecutorService writer;
+    private final ExecutorService compactor;
+    private FileChannel channel;
+    private boolean closed;
+
+    // Bytes taken from pending that have not reached the file, from the first one not written.
+    // Only touched by the writer thread, which writes them before anything newer
+    private ByteBuffer unwritten;
+    private boolean unforced;
+    private volatile IOException failure;
+
+    HabitJournal(FileStorage storage, Path journalPath, long compactThreshold, long syncMillis) throws IOException {
+        this.storage = storage;
+        this.journalPath = journalPath;
+        this.rotatedPath = rotatedPath(journalPath);
+        this.compactThreshold = compactThreshold;
+
+        this.channel = openChannel(journalPath);
+        this.size = channel.size();
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "microhabits-journal"));
+        this.compactor = Executors.newSingleThreadExecutor(r -> daemon(r, "microhabits-compact"));
+        writer.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    static Path rotatedPath(Path journalPath) {
+        return journalPath.resolveSibling(journalPath.getFileName() + ".old");
+    }
+
+    /**
+     * Records a new habit, or new details for an existing one.
+     */
+    public void recordDetails(Habit habit) {
+        append(habit.getId(), "A|" + habit.getId() + "|" + FileStorage.escape(habit.getName())
+                + "|" + FileStorage.escape(habit.getDescription()) + "\n");
+    }
+
+    /**
+     * Records the completion status of a habit for one day.
+     */
+    public void recordStatus(UUID habitId, LocalDate date, boolean completed) {
+        append(habitId, "S|" + habitId + "|" + date + (completed ? "|1\n" : "|0\n"));
+    }
+
+    /**
+     * Records the status of every day in the set for one habit, as a single append.
+     */
+    public void recordStatuses(UUID habitId, DayBitSet statuses) {
+        String prefix = "S|" + habitId + "|";
+        StringBuilder records = new StringBuilder(statuses.size() * (prefix.length() + 13));
+        statuses.forEach((day, completed) ->
+                records.append(prefix).append(LocalDate.ofEpochDay(day)).append(completed ? "|1\n" : "|0\n"));
+        append(habitId, records);
+    }
+
+    /**
+     * Records the removal of a habit.
+     */
+    public void recordRemoved(UUID habitId) {
+        append(habitId, "R|" + habitId + "\n");
+    }
+
+    /**
+     * Returns true once the journal has grown past the compaction threshold
+     * and no compaction is already running.
+     */
+    public boolean needsCompaction() {
+        synchronized (lock) {
+            return !compacting && size >= compactThreshold;
+        }
+    }
+
+    /**
+     * Returns the error of the last sync if it failed and no sync has succeeded since, otherwise null.
+     * While it is set, recent changes are only in memory.
+     */
+    public IOException failure() {
+        return failure;
+    }
+
+    /**
+     * Folds the journal into a new snapshot in the background.
+     * The journal is cut over at the moment of the call, so the given habits must be the state
+     * right now, and neither the list nor the habits may change later; records appended later go
+     * to a fresh journal. Only habits with records since the previous compaction are written again.
+     */
+    public void compact(List<Habit> snapshot) {
+        synchronized (lock) {
+            if (compacting || closed) {
+                return;
+            }
+            compacting = true;
+            cutTail = drainPending();
+            cutSnapshot = snapshot;
+            cutTouched = touched;
+            touched = new HashSet<>();
+            size = VERSION_LINE.length() + 1;
+        }
+        writer.execute(this::syncQuietly);
+    }
+
+    /**
+     * Writes and fsyncs everything appended so far, waiting until it is on disk.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> {
+                sync();
+                return null;
+            }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing journal.", ex);
+        } catch (Exception ex) {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof IOException io) ? io : new IOException("Journal flush failed.", cause);
+        }
+    }
+
+    /**
+     * Flushes pending records, waits for a running compaction and releases the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    private void append(UUID habitId, CharSequence record) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            pending.append(record);
+            touched.add(habitId);
+            size += record.length();
+        }
+    }
+
+    private String drainPending() {
+        String data = pending.toString();
+        pending = new StringBuilder();
+        return data;
+    }
+
+    private void syncQuietly() {
+        boolean failing = failure != null;
+        try {
+            sync();
+        } catch (IOException ex) {
+            // Retried every interval; report when the failure starts rather than on every retry
+            if (!failing) {
+                System.err.println("Journal write failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    // Runs on the writer thread. A pending cut is taken together with the records after it,
+    // so whichever sync runs first rotates before those records reach a file.
+    private void sync() throws IOException {
+        try {
+            syncRecords();
+            failure = null;
+        } catch (IOException ex) {
+            failure = ex;
+            throw ex;
+        }
+    }
+
+    private void syncRecords() throws IOException {
+        String tail;
+        List<Habit> snapshot;
+        Set<UUID> changed;
+        String data;
+        synchronized (lock) {
+            tail = cutTail;
+            snapshot = cutSnapshot;
+            changed = cutTouched;
+            cutTail = null;
+            cutSnapshot = null;
+            cutTouched = null;
+            data = pending.isEmpty() ? "" : drainPending();
+        }
+        if (tail != null) {
+            rotateAndCompact(tail, snapshot, changed);
+        }
+        writeAndForce(data);
+    }
+
+    private void rotateAndCompact(String tail, List<Habit> snapshot, Set<UUID> changed) {
+        try {
+            writeAndForce(tail);
+            rotate();
+        } catch (IOException ex) {
+            // The tail stays unwritten or in the current journal, so nothing is lost; the snapshot is dropped
+            finishCompaction(changed);
+            System.err.println("Journal rotation failed: " + ex.getMessage());
+            return;
+        }
+
+        compactor.execute(() -> {
+            Set<UUID> unsaved = changed;
+            try {
+                // Habits without records since the last compaction are already in the save file as they are
+                storage.saveChanges(snapshot, changed);
+                Files.deleteIfExists(rotatedPath);
+                unsaved = Set.of();
+            } catch (IOException ex) {
+                // The rotated journal stays on disk and is replayed on the next load
+                System.err.println("Journal compaction failed: " + ex.getMessage());
+            } finally {
+                finishCompaction(unsaved);
+            }
+        });
+    }
+
+    // Writes what an earlier failed call left over, then data. On failure the bytes not written
+    // are kept for the next call, so a record is never skipped or written twice
+    private void writeAndForce(String data) throws IOException {
+        if (!data.isEmpty()) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(data);
+            if (unwritten == null) {
+                unwritten = bytes;
+            } else {
+                unwritten = ByteBuffer.allocate(unwritten.remaining() + bytes.remaining())
+                        .put(unwritten).put(bytes).flip();
+            }
+        }
+        if (unwritten == null && !unforced) {
+            return;
+        }
+        if (!channel.isOpen()) {
+            // A rotation failed after closing the channel
+            channel = openChannel(journalPath);
+        }
+        if (unwritten != null) {
+            while (unwritten.hasRemaining()) {
+                channel.write(unwritten);
+            }
+            unwritten = null;
+            unforced = true;
+        }
+        channel.force(false);
+        unforced = false;
+    }
+
+    // Moves the current journal aside (appending to a leftover one) and starts a new file.
+    // If the move fails, the next write reopens the current journal and appends to it
+    private void rotate() throws IOException {
+        channel.close();
+
+        if (Files.exists(rotatedPath)) {
+            try (FileChannel from = FileChannel.open(journalPath, StandardOpenOption.READ);
+                 FileChannel to = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                // Skip the version line; the rotated file already has one
+                long position = VERSION_LINE.length() + 1;
+                while (position < from.size()) {
+                    position += from.transferTo(position, from.size() - position, to);
+                }
+                to.force(false);
+            }
+            Files.delete(journalPath);
+        } else {
+            Files.move(journalPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        channel = openChannel(journalPath);
+    }
+
+    // Habits a failed compaction did not write are written by the next one
+    private void finishCompaction(Set<UUID> unsaved) {
+        synchronized (lock) {
+            compacting = false;
+            touched.addAll(unsaved);
+        }
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (ch.size() == 0) {
+            ch.write(StandardCharsets.UTF_8.encode(VERSION_LINE + "\n"));
+            ch.force(true);
+        }
+        return ch;
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Applies the records of a journal file to the habits map (keyed by ID, in display order).
+     * A last line without a newline is treated as a write cut short by a crash and ignored.
+     * IDs of habits added or changed are added to {@code touched}.
+     */
+    static void replay(Path path, Map<UUID, Habit> habits, Set<UUID> touched) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n') + 1;
+        if (end == 0) {
+            return;
+        }
+
+        String[] lines = content.substring(0, end).split("\n");
+        if (!VERSION_LINE.equals(lines[0].trim())) {
+            throw new IOException("Unsupported journal format.");
+        }
+
+        for (int i = 1; i < lines.length; i++) {
+            if (!lines[i].isEmpty()) {
+                applyRecord(lines[i], habits, touched);
+            }
+        }
+    }
+
+    private static void applyRecord(String line, Map<UUID, Habit> habits, Set<UUID> touched) throws IOException {
+        String[] parts = line.split("\\|", -1);
+        try {
+            switch (parts[0]) {
+                case "A" -> {
+                    UUID id = UUID.fromString(parts[1]);
+                    String name = FileStorage.unescape(parts[2]);
+                    String desc = FileStorage.unescape(parts[3]);
+                    touched.add(id);
+                    Habit habit = habits.get(id);
+                    if (habit == null) {
+                        habits.put(id, new Habit(id, name, desc));
+                    } else {
+                        habit.setName(name);
+                        habit.setDescription(desc);
+                    }
+                }
+                case "S" -> {
+                    UUID id = UUID.fromString(parts[1]);
+                    Habit habit = habits.get(id);
+                    // Status for a habit removed later in the journal
+                    if (habit != null) {
+                        touched.add(id);
+                        habit.markCompleted(LocalDate.parse(parts[2]), "1".equals(parts[3]));
+                    }
+                }
+                case "R" -> habits.remove(UUID.fromString(parts[1]));
+                default -> throw new IOException("Invalid line in journal: " + line);
+            }
+        } catch (RuntimeException ex) {
+            throw new IOException("Invalid line in journal: " + line, ex);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.savin.microhabits.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Converts between {@code yyyy-MM-dd} text and epoch days without DateTimeFormatter.
+ * Anything outside the plain four-digit-year form goes through LocalDate instead,
+ * so accepted input and error messages match {@link LocalDate#parse(CharSequence)}.
+ */
+final class IsoDates {
+
+    // Days from 0000-01-01 to 1970-01-01
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+
+    // Longest LocalDate.toString output, e.g. "+999999999-12-31"
+    static final int MAX_LENGTH = 16;
+
+    // Range where LocalDate.toString prints exactly four year digits
+    private static final long FIRST_FAST_DAY = LocalDate.of(0, 1, 1).toEpochDay();
+    private static final long LAST_FAST_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    private IsoDates() {
+    }
+
+    /**
+     * Parses {@code chars[from, to)} as an ISO date and returns its epoch day.
+     */
+    static long parseEpochDay(char[] chars, int from, int to) {
+        if (to - from == 10 && chars[from + 4] == '-' && chars[from + 7] == '-') {
+            int year = digits(chars, from, 4);
+            int month = digits(chars, from + 5, 2);
+            int day = digits(chars, from + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                long epochDay = toEpochDay(year, month, day);
+                if (epochDay != Long.MIN_VALUE) {
+                    return epochDay;
+                }
+            }
+        }
+        return LocalDate.parse(new String(chars, from, to - from)).toEpochDay();
+    }
+
+    /**
+     * Parses ASCII bytes {@code bytes[from, to)} as an ISO date and returns its epoch day.
+     */
+    static long parseEpochDay(ByteBuffer bytes, int from, int to) {
+        if (to - from == 10 && bytes.get(from + 4) == '-' && bytes.get(from + 7) == '-') {
+            int year = digits(bytes, from, 4);
+            int month = digits(bytes, from + 5, 2);
+            int day = digits(bytes, from + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                long epochDay = toEpochDay(year, month, day);
+                if (epochDay != Long.MIN_VALUE) {
+                    return epochDay;
+                }
+            }
+        }
+        byte[] text = new byte[to - from];
+        bytes.get(from, text);
+        return LocalDate.parse(new String(text, StandardCharsets.UTF_8)).toEpochDay();
+    }
+
+    /**
+     * Writes the epoch day as {@code yyyy-MM-dd} into {@code out} at {@code off}
+     * and returns the number of chars written. Needs room for {@link #MAX_LENGTH} chars.
+     */
+    static int formatEpochDay(long epochDay, char[] out, int off) {
+        if (epochDay < FIRST_FAST_DAY || epochDay > LAST_FAST_DAY) {
+            String text = LocalDate.ofEpochDay(epochDay).toString();
+            text.getChars(0, text.length(), out, off);
+            return text.length();
+        }
+
+        // Civil-from-days on a March-based year, valid for the whole fast range
+        long z = epochDay + 719_468L;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        out[off + 0] = (char) ('0' + year / 1000);
+        out[off + 1] = (char) ('0' + year / 100 % 10);
+        out[off + 2] = (char) ('0' + year / 10 % 10);
+        out[off + 3] = (char) ('0' + year % 10);
+        out[off + 4] = '-';
+        out[off + 5] = (char) ('0' + month / 10);
+        out[off + 6] = (char) ('0' + month % 10);
+        out[off + 7] = '-';
+        out[off + 8] = (char) ('0' + day / 10);
+        out[off + 9] = (char) ('0' + day % 10);
+        return 10;
+    }
+
+    // Returns the decimal value of count ASCII digits, or -1 if any is not a digit
+    private static int digits(char[] chars, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = chars[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static int digits(ByteBuffer bytes, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = bytes.get(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the epoch day for a year in 0..9999, or {@link Long#MIN_VALUE} if the date is invalid.
+     */
+    static long toEpochDay(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+
+        // Same arithmetic as LocalDate.toEpochDay for non-negative years
+        long y = year;
+        long total = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367L * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeap(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeap(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
@@ -0,0 +1,19 @@
+package com.savin.microhabits.storage;
+
+/**
+ * How {@link FileStorage} reads V1 text snapshots. V2 binary files are always streamed.
+ */
+public enum LoadMode {
+
+    /** Stream smaller files; map large ones, parsing in parallel when more than one core is available. */
+    AUTO,
+
+    /** Decode the file through a buffered reader. */
+    STREAMING,
+
+    /** Scan a memory-mapped view of the file in place. */
+    MAPPED,
+
+    /** Scan a memory-mapped view and parse habit blocks on several threads. */
+    PARALLEL
+}
@@ -0,0 +1,307 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Parses a MICROHABITS_V1 file by scanning a memory-mapped view of it in place.
+ * Record tags, UUIDs, dates and flags are read straight from the ASCII bytes;
+ * only habit names and descriptions are decoded as UTF-8.
+ * Large files are mapped one window at a time.
+ */
+final class MappedV1Reader {
+
+    private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+
+    private static final byte[] VERSION_BYTES = V1TextReader.VERSION_LINE.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_BYTES = {'E', 'N', 'D'};
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long RETURNS = 0x0D0D0D0D0D0D0D0DL;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // Set only while finding block boundaries
+    private List<Long> blockEnds;
+    private byte[] scratch = new byte[256];
+
+    // Field boundaries of the current line, relative to the window
+    private final int[] fieldStart = new int[4];
+    private final int[] fieldEnd = new int[4];
+
+    private final List<Habit> result = new ArrayList<>();
+    private Habit current;
+    private boolean headerSeen;
+
+    MappedV1Reader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Parses the whole file and returns the completed habits in file order.
+     */
+    List<Habit> read() throws IOException {
+        return readRange(0, channel.size(), true);
+    }
+
+    /**
+     * Parses the lines in {@code [from, to)} and returns the habits completed there.
+     * Without {@code expectHeader} the range must start at a block boundary
+     * (after an END line), where no habit is open.
+     */
+    List<Habit> readRange(long from, long to, boolean expectHeader) throws IOException {
+        headerSeen = !expectHeader;
+        scanRange(from, to);
+
+        if (!headerSeen) {
+            throw new IOException("Unsupported save file format.");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the file offset just after every END line, without parsing the records.
+     * Every offset is a point where a parallel reader can start.
+     */
+    List<Long> findBlockEnds() throws IOException {
+        blockEnds = new ArrayList<>();
+        scanRange(0, channel.size());
+        return blockEnds;
+    }
+
+    private void scanRange(long from, long to) throws IOException {
+        long position = from;
+        while (position < to) {
+            long length = Math.min(WINDOW_BYTES, to - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+            boolean lastWindow = position + length == to;
+
+            int consumed = parseWindow((int) length, lastWindow);
+            if (consumed == 0 && !lastWindow) {
+                throw new IOException("Line too long in save file.");
+            }
+            position += consumed;
+        }
+    }
+
+    // Handles every complete line in the window and returns the bytes consumed
+    private int parseWindow(int limit, boolean lastWindow) throws IOException {
+        int lineStart = 0;
+        int i = 0;
+        while (i < limit) {
+            int end = findLineEnd(i, limit);
+            if (end < 0) {
+                break;
+            }
+            lineFound(lineStart, end, end + 1);
+            lineStart = end + 1;
+            i = end + 1;
+        }
+
+        if (lastWindow && lineStart < limit) {
+            lineFound(lineStart, limit, limit);
+            return limit;
+        }
+        return lineStart;
+    }
+
+    private void lineFound(int from, int to, int next) throws IOException {
+        if (blockEnds == null) {
+            handleLine(from, to);
+            return;
+        }
+
+        // Boundary scan: the first line is the version header and never a boundary
+        if (windowStart + from == 0) {
+            return;
+        }
+        while (from < to && (window.get(from) & 0xFF) <= ' ') from++;
+        while (to > from && (window.get(to - 1) & 0xFF) <= ' ') to--;
+        if (matches(from, to, END_BYTES)) {
+            blockEnds.add(windowStart + next);
+        }
+    }
+
+    // Finds the next '\n' or '\r' eight bytes at a time, or returns -1
+    private int findLineEnd(int from, int limit) {
+        int i = from;
+        for (; i + 8 <= limit; i += 8) {
+            long word = window.getLong(i);
+            if (hasByte(word, NEWLINES) || hasByte(word, RETURNS)) {
+                break;
+            }
+        }
+        for (; i < limit; i++) {
+            byte b = window.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Classic "has zero byte" test applied to word XOR pattern
+    private static boolean hasByte(long word, long pattern) {
+        long x = word ^ pattern;
+        return ((x - 0x0101010101010101L) & ~x & 0x8080808080808080L) != 0;
+    }
+
+    private void handleLine(int from, int to) throws IOException {
+        // Bytes up to ' ' are exactly what String.trim() removes; UTF-8 never uses them inside a character
+        while (from < to && (window.get(from) & 0xFF) <= ' ') from++;
+        while (to > from && (window.get(to - 1) & 0xFF) <= ' ') to--;
+
+        if (!headerSeen) {
+            if (!matches(from, to, VERSION_BYTES)) {
+                throw new IOException("Unsupported save file format.");
+            }
+            headerSeen = true;
+            return;
+        }
+
+        if (from == to) {
+            return;
+        }
+
+        if (startsWith(from, to, 'H')) {
+            int fields = split(from, to);
+            if (fields < 3) {
+                throw invalidLine(from, to);
+            }
+            UUID id = parseUuid(fieldStart[1], fieldEnd[1]);
+            String name = FileStorage.unescape(decode(fieldStart[2], fieldEnd[2]));
+            String desc = fields >= 4 ? FileStorage.unescape(decode(fieldStart[3], fieldEnd[3])) : "";
+
+            current = new Habit(id, name, desc);
+
+        } else if (startsWith(from, to, 'S')) {
+            if (current == null) {
+                throw new IOException("Status entry found before habit header.");
+            }
+
+            int fields = split(from, to);
+            if (fields < 3) {
+                throw invalidLine(from, to);
+            }
+            long day = IsoDates.parseEpochDay(window, fieldStart[1], fieldEnd[1]);
+            boolean completed = fieldEnd[2] - fieldStart[2] == 1 && window.get(fieldStart[2]) == '1';
+            current.markCompletedEpochDay(day, completed);
+
+        } else if (matches(from, to, END_BYTES)) {
+            if (current != null) {
+                result.add(current);
+            }
+            current = null;
+
+        } else {
+            throw invalidLine(from, to);
+        }
+    }
+
+    // Same splitting rules as V1TextReader.split
+    private int split(int from, int to) {
+        int count = 0;
+        int start = from;
+        for (int i = from; i < to && count < 3; i++) {
+            if (window.get(i) == '|') {
+                fieldStart[count] = start;
+                fieldEnd[count] = i;
+                count++;
+                start = i + 1;
+            }
+        }
+
+        int end = start;
+        while (end < to && window.get(end) != '|') end++;
+        fieldStart[count] = start;
+        fieldEnd[count] = end;
+        return count + 1;
+    }
+
+    private boolean startsWith(int from, int to, char tag) {
+        return to - from >= 2 && window.get(from) == tag && window.get(from + 1) == '|';
+    }
+
+    private boolean matches(int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (window.get(from + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Decodes a field as strict UTF-8, with a shortcut for plain ASCII
+    private String decode(int from, int to) throws IOException {
+        int length = to - from;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        window.get(from, scratch, 0, length);
+
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = scratch[i] >= 0;
+        }
+        if (ascii) {
+            return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+        CharBuffer chars = decoder.reset().decode(ByteBuffer.wrap(scratch, 0, length));
+        return chars.toString();
+    }
+
+    private IOException invalidLine(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        window.get(from, bytes);
+        return new IOException("Invalid line in save file: " + new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private UUID parseUuid(int from, int to) throws IOException {
+        if (to - from == 36
+                && window.get(from + 8) == '-' && window.get(from + 13) == '-'
+                && window.get(from + 18) == '-' && window.get(from + 23) == '-') {
+            long g1 = hex(from, from + 8);
+            long g2 = hex(from + 9, from + 13);
+            long g3 = hex(from + 14, from + 18);
+            long g4 = hex(from + 19, from + 23);
+            long g5 = hex(from + 24, from + 36);
+            if ((g1 | g2 | g3 | g4 | g5) >= 0) {
+                return new UUID(g1 << 32 | g2 << 16 | g3, g4 << 48 | g5);
+            }
+        }
+        return UUID.fromString(decode(from, to));
+    }
+
+    private long hex(int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            byte c = window.get(i);
+            int d;
+            if (c >= '0' && c <= '9') d = c - '0';
+            else if (c >= 'a' && c <= 'f') d = c - 'a' + 10;
+            else if (c >= 'A' && c <= 'F') d = c - 'A' + 10;
+            else return -1;
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,106 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a MICROHABITS_V1 file by parsing independent H| ... END blocks on several threads.
+ *
+ * A first pass finds the offset after every END line. The file is cut at those
+ * offsets into chunks of similar size, each chunk is parsed by its own
+ * {@link MappedV1Reader}, and the results are joined in file order.
+ * After END no habit is open, so every chunk starts in the same state the
+ * sequential reader would be in, and the first error in file order is the one reported.
+ */
+final class ParallelV1Loader {
+
+    // Chunks per thread, so uneven blocks still balance out
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // Chunks smaller than this are not worth a task of their own
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int threads;
+
+    ParallelV1Loader(FileChannel channel, int threads) {
+        this.channel = channel;
+        this.threads = Math.max(1, threads);
+    }
+
+    List<Habit> read() throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = chunk(new MappedV1Reader(channel).findBlockEnds(), size);
+
+        List<Callable<ChunkResult>> tasks = new ArrayList<>(chunks.size());
+        for (long[] chunk : chunks) {
+            boolean first = chunk[0] == 0;
+            tasks.add(() -> parseChunk(chunk[0], chunk[1], first));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<ChunkResult>> futures = pool.invokeAll(tasks);
+
+            List<Habit> result = new ArrayList<>();
+            for (Future<ChunkResult> future : futures) {
+                result.addAll(join(future));
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Keeps the parser's own exception object; the pool would wrap it when rethrowing
+    private record ChunkResult(List<Habit> habits, Throwable error) {}
+
+    private ChunkResult parseChunk(long from, long to, boolean first) {
+        try {
+            return new ChunkResult(new MappedV1Reader(channel).readRange(from, to, first), null);
+        } catch (IOException | RuntimeException ex) {
+            return new ChunkResult(null, ex);
+        }
+    }
+
+    // Groups consecutive blocks into [start, end) ranges of roughly equal size
+    private List<long[]> chunk(List<Long> blockEnds, long size) {
+        long target = Math.max(MIN_CHUNK_BYTES, size / ((long) threads * CHUNKS_PER_THREAD));
+
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        for (long end : blockEnds) {
+            if (end - start >= target && end < size) {
+                chunks.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        chunks.add(new long[]{start, size});
+        return chunks;
+    }
+
+    // Rethrows a chunk's failure as the same exception the sequential reader would throw
+    private static List<Habit> join(Future<ChunkResult> future) throws IOException {
+        ChunkResult chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading.", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Parallel load failed.", ex.getCause());
+        }
+
+        if (chunk.error() instanceof IOException io) throw io;
+        if (chunk.error() instanceof RuntimeException re) throw re;
+        return chunk.habits();
+    }
+}
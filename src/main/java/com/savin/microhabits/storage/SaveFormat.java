@@ -0,0 +1,16 @@
+package com.savin.microhabits.storage;
+
+/**
+ * On-disk snapshot formats understood by {@link FileStorage}.
+ */
+public enum SaveFormat {
+
+    /** Line-based text: "MICROHABITS_V1", then H| / S| / END records. */
+    V1_TEXT,
+
+    /** Binary records with run-length or bitmap encoded history. */
+    V2_BINARY,
+
+    /** Index file plus append-only V2 records, so a save only writes the habits that changed. */
+    V3_SEGMENTED
+}
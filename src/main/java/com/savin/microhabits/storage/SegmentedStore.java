@@ -0,0 +1,456 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Reads and writes the MICROHABITS_V3 layout: the save file is an index, and the habits
+ * live in a separate append-only segments file next to it, one V2 habit record per segment.
+ *
+ * Index layout (big-endian, "varint" = unsigned LEB128):
+ * <pre>
+ * "MICROHABITS_V3"  14 ASCII bytes
+ * flags             1 byte, always 0
+ * generation        varint; segments are in "&lt;save file&gt;.seg&lt;generation&gt;"
+ * habitCount        varint
+ * per habit:        id (2 x long), offset varint, length varint
+ * </pre>
+ * A delta save appends only habits that changed since the last save and rewrites the small
+ * index, so its cost follows the amount of change. Segments are never overwritten, so the
+ * previous index (kept as the backup) stays readable. Once dead segments outweigh live ones
+ * the live ones are copied into a new generation with {@link FileChannel#transferTo}.
+ * Not thread-safe; {@link FileStorage} calls it while holding its own lock.
+ */
+final class SegmentedStore {
+
+    static final byte[] MAGIC = "MICROHABITS_V3".getBytes(StandardCharsets.US_ASCII);
+
+    // Small files are not worth compacting even when mostly dead
+    private static final long MIN_COMPACT_BYTES = 1L << 20;
+
+    // Smallest index entry: the ID plus one-byte offset and length varints
+    private static final int MIN_ENTRY_BYTES = 18;
+
+    @FunctionalInterface
+    interface IndexReplacer {
+        void replace() throws IOException;
+    }
+
+    private record Segment(long offset, long length) {}
+
+    private record IndexEntry(UUID id, long offset, long length) {}
+
+    private final Path indexPath;
+    private final Path backupPath;
+    private final Path tempPath;
+    private final IndexReplacer replaceWithTemp;
+    private final int bufferBytes;
+
+    // What the index on disk says after the last load or save of indexPath; null forces a full write
+    private Map<UUID, Segment> segments;
+    private long generation;
+    private long liveBytes;
+    private long segmentsFileSize;
+    private long indexSize;
+    private FileTime indexModified;
+
+    SegmentedStore(Path indexPath, Path backupPath, Path tempPath, IndexReplacer replaceWithTemp, int bufferBytes) {
+        this.indexPath = indexPath;
+        this.backupPath = backupPath;
+        this.tempPath = tempPath;
+        this.replaceWithTemp = replaceWithTemp;
+        this.bufferBytes = bufferBytes;
+    }
+
+    static boolean hasMagic(byte[] head, int length) {
+        return length >= MAGIC.length && Arrays.equals(head, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Reads the habits of an index file in index order, streaming its segments file once in offset order.
+     * The path may also be the backup of the index; segments files are always named after the index.
+     */
+    List<Habit> read(Path path, boolean lazyHistory) throws IOException {
+        long gen;
+        List<IndexEntry> entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), bufferBytes))) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!hasMagic(magic, magic.length) || in.readUnsignedByte() != 0) {
+                throw new IOException("Unsupported save file format.");
+            }
+            gen = V2BinaryReader.readVarint(in);
+            long count = V2BinaryReader.readVarint(in);
+            // A corrupt count fails here instead of sizing the list from it
+            if (count > Files.size(path) / MIN_ENTRY_BYTES) {
+                throw new IOException("Corrupt save file: invalid habit count " + count + ".");
+            }
+            entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                UUID id = new UUID(in.readLong(), in.readLong());
+                entries.add(new IndexEntry(id, V2BinaryReader.readVarint(in), V2BinaryReader.readVarint(in)));
+            }
+        }
+
+        Integer[] order = new Integer[entries.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparingLong(i -> entries.get(i).offset()));
+
+        Habit[] habits = new Habit[entries.size()];
+        try (CountingInputStream in = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(segmentsPath(indexPath, gen)), bufferBytes))) {
+            V2BinaryReader reader = new V2BinaryReader(in, lazyHistory);
+            for (int i : order) {
+                IndexEntry entry = entries.get(i);
+                if (entry.offset() < in.count) {
+                    throw new IOException("Corrupt save file: overlapping segments.");
+                }
+                in.skipNBytes(entry.offset() - in.count);
+                habits[i] = reader.readRecord();
+                if (in.count != entry.offset() + entry.length() || !habits[i].getId().equals(entry.id())) {
+                    throw new IOException("Corrupt save file: segment does not match index.");
+                }
+            }
+        }
+
+        if (path.equals(indexPath)) {
+            Map<UUID, Segment> loaded = new HashMap<>();
+            for (int i = 0; i < habits.length; i++) {
+                IndexEntry entry = entries.get(i);
+                if (loaded.put(entry.id(), new Segment(entry.offset(), entry.length())) != null) {
+                    throw new IOException("Corrupt save file: duplicate habit " + entry.id() + ".");
+                }
+            }
+            remember(gen, loaded, Files.size(segmentsPath(indexPath, gen)));
+        }
+        return new ArrayList<>(Arrays.asList(habits));
+    }
+
+    /**
+     * Marks habits whose loaded copy was changed after reading, e.g. by journal replay,
+     * so the next delta save writes them again.
+     */
+    void forget(Set<UUID> ids) {
+        if (segments == null) {
+            return;
+        }
+        segments.keySet().removeAll(ids);
+    }
+
+    /**
+     * Writes every habit into a new segments file generation. Returns the bytes written.
+     */
+    long writeAll(List<Habit> habits) throws IOException {
+        // The index being replaced becomes the backup, so its segments must stay. With no index,
+        // e.g. after a corrupt one was moved aside, the current backup stays and so must its segments.
+        long previous;
+        if (!Files.exists(indexPath)) {
+            previous = generationOnDisk(backupPath);
+        } else {
+            previous = segments != null && indexUnchanged() ? generation : generationOnDisk(indexPath);
+        }
+        long gen = nextGeneration();
+        Map<UUID, Segment> written = new HashMap<>();
+        long size;
+        try (FileChannel channel = FileChannel.open(segmentsPath(indexPath, gen),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CountingOutputStream out = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), bufferBytes), 0);
+            V2BinaryWriter writer = new V2BinaryWriter(out);
+            for (Habit habit : habits) {
+                long offset = out.count;
+                writer.writeRecord(habit);
+                written.put(habit.getId(), new Segment(offset, out.count - offset));
+            }
+            out.flush();
+            channel.force(true);
+            size = channel.size();
+        }
+
+        long indexBytes = writeIndex(gen, habits, written);
+        remember(gen, written, size);
+        deleteGenerationsExcept(gen, previous);
+        return size + indexBytes;
+    }
+
+    /**
+     * Appends habits that are new or listed in {@code changed}, then rewrites the index. Falls back to {@link #writeAll} when the files on disk
+     * are not the ones this store last read or wrote. Returns the bytes written.
+     */
+    long writeChanges(List<Habit> habits, Set<UUID> changed) throws IOException {
+        Path data = segmentsPath(indexPath, generation);
+        if (segments == null || !indexUnchanged() || !Files.exists(data)) {
+            return writeAll(habits);
+        }
+
+        Map<UUID, Segment> next = new HashMap<>();
+        long appended;
+        long size;
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            // Anything past the last index, such as segments of a save cut short by a crash, is dead space
+            long start = channel.size();
+            channel.position(start);
+            CountingOutputStream out = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), bufferBytes), start);
+            V2BinaryWriter writer = new V2BinaryWriter(out);
+            for (Habit habit : habits) {
+                Segment segment = segments.get(habit.getId());
+                if (segment != null && !changed.contains(habit.getId())) {
+                    next.put(habit.getId(), segment);
+                    continue;
+                }
+                long offset = out.count;
+                writer.writeRecord(habit);
+                next.put(habit.getId(), new Segment(offset, out.count - offset));
+            }
+            out.flush();
+            appended = out.count - start;
+            if (appended > 0) {
+                channel.force(true);
+            }
+            size = channel.size();
+        }
+
+        long indexBytes = writeIndex(generation, habits, next);
+        remember(generation, next, size);
+
+        long dead = segmentsFileSize - liveBytes;
+        if (segmentsFileSize >= MIN_COMPACT_BYTES && dead > liveBytes) {
+            return appended + indexBytes + compact(habits);
+        }
+        return appended + indexBytes;
+    }
+
+    // Copies the live segments, in index order, into a new generation without decoding them
+    private long compact(List<Habit> habits) throws IOException {
+        long previous = generation;
+        long gen = nextGeneration();
+        Map<UUID, Segment> moved = new HashMap<>();
+        long size;
+        try (FileChannel source = FileChannel.open(segmentsPath(indexPath, previous), StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(segmentsPath(indexPath, gen),
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            // Segments that follow each other in both files are copied with one call
+            long runStart = -1;
+            long runLength = 0;
+            for (Habit habit : habits) {
+                Segment segment = segments.get(habit.getId());
+                if (runStart >= 0 && segment.offset() != runStart + runLength) {
+                    transfer(source, runStart, runLength, target);
+                    runStart = -1;
+                }
+                if (runStart < 0) {
+                    runStart = segment.offset();
+                    runLength = 0;
+                }
+                runLength += segment.length();
+                moved.put(habit.getId(), new Segment(position, segment.length()));
+                position += segment.length();
+            }
+            if (runStart >= 0) {
+                transfer(source, runStart, runLength, target);
+            }
+            target.force(true);
+            size = target.size();
+        }
+
+        long indexBytes = writeIndex(gen, habits, moved);
+        remember(gen, moved, size);
+        deleteGenerationsExcept(gen, previous);
+        return size + indexBytes;
+    }
+
+    private static void transfer(FileChannel source, long offset, long length, FileChannel target) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = source.transferTo(offset + done, length - done, target);
+            if (n <= 0) {
+                throw new IOException("Could not copy habit segments.");
+            }
+            done += n;
+        }
+    }
+
+    private long writeIndex(long gen, List<Habit> habits, Map<UUID, Segment> segmentsById) throws IOException {
+        long size;
+        try (FileChannel channel = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), bufferBytes));
+            out.write(MAGIC);
+            out.writeByte(0);
+            V2BinaryWriter.writeVarint(out, gen);
+            V2BinaryWriter.writeVarint(out, habits.size());
+            for (Habit habit : habits) {
+                Segment segment = segmentsById.get(habit.getId());
+                out.writeLong(habit.getId().getMostSignificantBits());
+                out.writeLong(habit.getId().getLeastSignificantBits());
+                V2BinaryWriter.writeVarint(out, segment.offset());
+                V2BinaryWriter.writeVarint(out, segment.length());
+            }
+            out.flush();
+            channel.force(true);
+            size = channel.size();
+        }
+        replaceWithTemp.replace();
+        return size;
+    }
+
+    private void remember(long gen, Map<UUID, Segment> current, long fileSize) throws IOException {
+        generation = gen;
+        segments = current;
+        segmentsFileSize = fileSize;
+        liveBytes = 0;
+        for (Segment segment : current.values()) {
+            liveBytes += segment.length();
+        }
+        BasicFileAttributes attributes = Files.readAttributes(indexPath, BasicFileAttributes.class);
+        indexSize = attributes.size();
+        indexModified = attributes.lastModifiedTime();
+    }
+
+    // Another process may have saved since; its index could point at segments this store does not know
+    private boolean indexUnchanged() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(indexPath, BasicFileAttributes.class);
+            return attributes.size() == indexSize && attributes.lastModifiedTime().equals(indexModified);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    // Generation an index file points at, or -1 if it is missing or not V3
+    private static long generationOnDisk(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!hasMagic(magic, magic.length)) {
+                return -1;
+            }
+            in.readUnsignedByte();
+            return V2BinaryReader.readVarint(in);
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private long nextGeneration() throws IOException {
+        long highest = generation;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(indexPath.getParent(), segmentsGlob())) {
+            for (Path file : files) {
+                highest = Math.max(highest, generationOf(file));
+            }
+        }
+        return highest + 1;
+    }
+
+    // Keeps the current generation and the one the backup index may still point at
+    private void deleteGenerationsExcept(long current, long previous) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(indexPath.getParent(), segmentsGlob())) {
+            for (Path file : files) {
+                long gen = generationOf(file);
+                if (gen >= 0 && gen != current && gen != previous) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Removing old habit segments failed: " + ex.getMessage());
+        }
+    }
+
+    private String segmentsGlob() {
+        return indexPath.getFileName() + ".seg*";
+    }
+
+    private long generationOf(Path file) {
+        String suffix = file.getFileName().toString().substring(indexPath.getFileName().toString().length() + 4);
+        try {
+            return Long.parseLong(suffix);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static Path segmentsPath(Path index, long gen) {
+        return index.resolveSibling(index.getFileName() + ".seg" + gen);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out, long start) {
+            super(out);
+            this.count = start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
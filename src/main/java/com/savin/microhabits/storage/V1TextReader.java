@@ -0,0 +1,226 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streaming parser for the MICROHABITS_V1 text format.
+ * Reads into a reusable char buffer and tokenizes each line in place,
+ * so only habit names and descriptions become Strings.
+ */
+final class V1TextReader {
+
+    static final String VERSION_LINE = "MICROHABITS_V1";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private char[] buf = new char[BUFFER_SIZE];
+    private int limit;
+    private boolean eof;
+
+    // Field boundaries of the current line, reused for every line
+    private final int[] fieldStart = new int[4];
+    private final int[] fieldEnd = new int[4];
+
+    private final List<Habit> result = new ArrayList<>();
+    private Habit current;
+    private boolean headerSeen;
+
+    V1TextReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Parses the whole stream and returns the completed habits in file order.
+     */
+    List<Habit> read() throws IOException {
+        int pos = 0;
+
+        while (true) {
+            int lineEnd = findLineEnd(pos);
+            if (lineEnd < 0) {
+                if (eof) {
+                    if (pos < limit) {
+                        handleLine(pos, limit);
+                    }
+                    break;
+                }
+                pos = compactAndFill(pos);
+                continue;
+            }
+
+            handleLine(pos, lineEnd);
+            pos = lineEnd + 1;
+        }
+
+        if (!headerSeen) {
+            throw new IOException("Unsupported save file format.");
+        }
+        return result;
+    }
+
+    private int findLineEnd(int from) {
+        for (int i = from; i < limit; i++) {
+            char c = buf[i];
+            if (c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Moves the unfinished line to the front of the buffer and reads more input
+    private int compactAndFill(int pos) throws IOException {
+        int pending = limit - pos;
+        if (pos == 0 && pending == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        } else {
+            System.arraycopy(buf, pos, buf, 0, pending);
+        }
+        limit = pending;
+
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+        return 0;
+    }
+
+    private void handleLine(int from, int to) throws IOException {
+        // Same whitespace rules as String.trim()
+        while (from < to && buf[from] <= ' ') from++;
+        while (to > from && buf[to - 1] <= ' ') to--;
+
+        if (!headerSeen) {
+            if (!matches(from, to, VERSION_LINE)) {
+                throw new IOException("Unsupported save file format.");
+            }
+            headerSeen = true;
+            return;
+        }
+
+        if (from == to) {
+            return;
+        }
+
+        if (startsWith(from, to, 'H')) {
+            int fields = split(from, to);
+            if (fields < 3) {
+                throw invalidLine(from, to);
+            }
+            UUID id = parseUuid(fieldStart[1], fieldEnd[1]);
+            String name = FileStorage.unescape(text(fieldStart[2], fieldEnd[2]));
+            String desc = fields >= 4 ? FileStorage.unescape(text(fieldStart[3], fieldEnd[3])) : "";
+
+            current = new Habit(id, name, desc);
+
+        } else if (startsWith(from, to, 'S')) {
+            if (current == null) {
+                throw new IOException("Status entry found before habit header.");
+            }
+
+            int fields = split(from, to);
+            if (fields < 3) {
+                throw invalidLine(from, to);
+            }
+            long day = IsoDates.parseEpochDay(buf, fieldStart[1], fieldEnd[1]);
+            boolean completed = fieldEnd[2] - fieldStart[2] == 1 && buf[fieldStart[2]] == '1';
+            current.markCompletedEpochDay(day, completed);
+
+        } else if (matches(from, to, "END")) {
+            if (current != null) {
+                result.add(current);
+            }
+            current = null;
+
+        } else {
+            throw invalidLine(from, to);
+        }
+    }
+
+    // Splits the line on '|' into at most four fields; returns the number of fields found
+    private int split(int from, int to) {
+        int count = 0;
+        int start = from;
+        for (int i = from; i < to && count < 3; i++) {
+            if (buf[i] == '|') {
+                fieldStart[count] = start;
+                fieldEnd[count] = i;
+                count++;
+                start = i + 1;
+            }
+        }
+
+        // The last field runs up to the next '|' (extra fields are ignored, as before)
+        int end = start;
+        while (end < to && buf[end] != '|') end++;
+        fieldStart[count] = start;
+        fieldEnd[count] = end;
+        return count + 1;
+    }
+
+    private boolean startsWith(int from, int to, char tag) {
+        return to - from >= 2 && buf[from] == tag && buf[from + 1] == '|';
+    }
+
+    private boolean matches(int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (buf[from + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String text(int from, int to) {
+        return new String(buf, from, to - from);
+    }
+
+    private IOException invalidLine(int from, int to) {
+        return new IOException("Invalid line in save file: " + text(from, to));
+    }
+
+    // Parses the canonical 8-4-4-4-12 form directly; anything else goes through UUID.fromString
+    private UUID parseUuid(int from, int to) {
+        if (to - from == 36
+                && buf[from + 8] == '-' && buf[from + 13] == '-'
+                && buf[from + 18] == '-' && buf[from + 23] == '-') {
+            long g1 = hex(from, from + 8);
+            long g2 = hex(from + 9, from + 13);
+            long g3 = hex(from + 14, from + 18);
+            long g4 = hex(from + 19, from + 23);
+            long g5 = hex(from + 24, from + 36);
+            if ((g1 | g2 | g3 | g4 | g5) >= 0) {
+                return new UUID(g1 << 32 | g2 << 16 | g3, g4 << 48 | g5);
+            }
+        }
+        return UUID.fromString(text(from, to));
+    }
+
+    // Returns the value of the ASCII hex digits, or -1 if any character is not one
+    private long hex(int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            int d;
+            if (c >= '0' && c <= '9') d = c - '0';
+            else if (c >= 'a' && c <= 'f') d = c - 'a' + 10;
+            else if (c >= 'A' && c <= 'F') d = c - 'A' + 10;
+            else return -1;
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+}
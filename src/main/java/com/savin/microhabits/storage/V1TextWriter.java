@@ -0,0 +1,80 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes habits in the MICROHABITS_V1 text format.
+ * Each habit is rendered into a reused char buffer and handed to the writer,
+ * so memory use is bounded by the largest single habit rather than the whole file.
+ */
+final class V1TextWriter {
+
+    private final Writer out;
+
+    // Per-habit line buffer, reused across habits
+    private char[] chars = new char[8 * 1024];
+    private int length;
+
+    V1TextWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the version line followed by one block per habit.
+     */
+    void write(List<Habit> habits) throws IOException {
+        out.write(V1TextReader.VERSION_LINE);
+        out.write('\n');
+
+        for (Habit h : habits) {
+            writeHabit(h);
+        }
+    }
+
+    /**
+     * Writes a single H| ... END block.
+     */
+    void writeHabit(Habit h) throws IOException {
+        length = 0;
+        append("H|");
+        append(h.getId().toString());
+        append('|');
+        append(FileStorage.escape(h.getName()));
+        append('|');
+        append(FileStorage.escape(h.getDescription()));
+        append('\n');
+
+        // Save daily completion status
+        h.forEachDay((day, completed) -> {
+            append("S|");
+            ensureCapacity(IsoDates.MAX_LENGTH);
+            length += IsoDates.formatEpochDay(day, chars, length);
+            append(completed ? "|1\n" : "|0\n");
+        });
+        append("END\n");
+
+        out.write(chars, 0, length);
+    }
+
+    private void append(String s) {
+        ensureCapacity(s.length());
+        s.getChars(0, s.length(), chars, length);
+        length += s.length();
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        chars[length++] = c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + extra));
+        }
+    }
+}
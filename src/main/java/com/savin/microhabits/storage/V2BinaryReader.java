@@ -0,0 +1,197 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.DayBitSet;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.model.HistorySummary;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads the MICROHABITS_V2 binary format written by {@link V2BinaryWriter}.
+ */
+final class V2BinaryReader {
+
+    // Sanity limit for length fields, so a corrupt file fails fast instead of allocating huge arrays
+    private static final int MAX_FIELD_BYTES = 64 * 1024 * 1024;
+
+    private final DataInputStream in;
+    private final boolean lazyHistory;
+
+    V2BinaryReader(InputStream in) {
+        this(in, false);
+    }
+
+    /**
+     * With lazyHistory, habits from files that carry summaries keep their history
+     * block undecoded until it is first needed.
+     */
+    V2BinaryReader(InputStream in, boolean lazyHistory) {
+        this.in = new DataInputStream(in);
+        this.lazyHistory = lazyHistory;
+    }
+
+    /**
+     * Checks whether the bytes start with the V2 magic.
+     */
+    static boolean hasMagic(byte[] head, int length) {
+        byte[] magic = V2BinaryWriter.MAGIC;
+        return length >= magic.length && Arrays.equals(head, 0, magic.length, magic, 0, magic.length);
+    }
+
+    /**
+     * Reads the header and all habit records.
+     */
+    List<Habit> read() throws IOException {
+        byte[] magic = new byte[V2BinaryWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!hasMagic(magic, magic.length)) {
+            throw new IOException("Unsupported save file format.");
+        }
+        int flags = in.readUnsignedByte();
+        if ((flags & ~V2BinaryWriter.FLAG_SUMMARY) != 0) {
+            throw new IOException("Unsupported save file format.");
+        }
+        boolean summaries = (flags & V2BinaryWriter.FLAG_SUMMARY) != 0;
+
+        int count = readLength(in);
+        List<Habit> result = new ArrayList<>(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            result.add(readHabit(summaries));
+        }
+        return result;
+    }
+
+    /**
+     * Reads one habit record with a summary and no header; used for the segments of the V3 layout.
+     */
+    Habit readRecord() throws IOException {
+        return readHabit(true);
+    }
+
+    private Habit readHabit(boolean summaries) throws IOException {
+        UUID id = new UUID(in.readLong(), in.readLong());
+        String name = readString();
+        String desc = readString();
+        HistorySummary summary = summaries ? readSummary() : null;
+
+        int historyLength = readLength(in);
+        if (summary != null && lazyHistory) {
+            byte[] block = new byte[historyLength];
+            in.readFully(block);
+            return new Habit(id, name, desc, summary, () -> decodeHistory(block));
+        }
+
+        Habit habit = new Habit(id, name, desc);
+        if (historyLength > 0) {
+            readHistory(in, habit::markCompletedEpochDay);
+        }
+        return habit;
+    }
+
+    private HistorySummary readSummary() throws IOException {
+        int longest = readLength(in);
+        if (longest == 0) {
+            return HistorySummary.EMPTY;
+        }
+        int current = readLength(in);
+        long lastDay = unzigzag(readVarint(in));
+        return new HistorySummary(lastDay, current, longest);
+    }
+
+    // Runs on first access to a lazily loaded habit's history
+    private static DayBitSet decodeHistory(byte[] block) {
+        DayBitSet days = new DayBitSet();
+        if (block.length > 0) {
+            try {
+                readHistory(new DataInputStream(new ByteArrayInputStream(block)), days::set);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return days;
+    }
+
+    private static void readHistory(DataInput in, DayBitSet.DayConsumer sink) throws IOException {
+        int encoding = in.readUnsignedByte();
+        if (encoding == V2BinaryWriter.ENCODING_EMPTY) {
+            return;
+        }
+
+        long day = unzigzag(readVarint(in));
+
+        if (encoding == V2BinaryWriter.ENCODING_RUNS) {
+            int runCount = readLength(in);
+            for (int r = 0; r < runCount; r++) {
+                long run = readVarint(in);
+                int state = (int) (run & 3);
+                long length = run >>> 2;
+                if (state != V2BinaryWriter.STATE_NONE) {
+                    boolean completed = state == V2BinaryWriter.STATE_DONE;
+                    for (long i = 0; i < length; i++) {
+                        sink.accept(day + i, completed);
+                    }
+                }
+                day += length;
+            }
+
+        } else if (encoding == V2BinaryWriter.ENCODING_BITMAP) {
+            int span = readLength(in);
+            int bytes = (span + 7) / 8;
+            byte[] done = new byte[bytes];
+            byte[] notDone = new byte[bytes];
+            in.readFully(done);
+            in.readFully(notDone);
+            for (int offset = 0; offset < span; offset++) {
+                int mask = 1 << (offset & 7);
+                if ((done[offset >>> 3] & mask) != 0) {
+                    sink.accept(day + offset, true);
+                } else if ((notDone[offset >>> 3] & mask) != 0) {
+                    sink.accept(day + offset, false);
+                }
+            }
+
+        } else {
+            throw new IOException("Corrupt save file: unknown history encoding " + encoding + ".");
+        }
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readLength(DataInput in) throws IOException {
+        long value = readVarint(in);
+        if (value < 0 || value > MAX_FIELD_BYTES * 8L) {
+            throw new IOException("Corrupt save file: invalid length " + value + ".");
+        }
+        return (int) value;
+    }
+
+    static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt save file: varint too long.");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,250 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.model.HistorySummary;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes habits in the MICROHABITS_V2 binary format.
+ *
+ * Layout (all multi-byte numbers big-endian, "varint" = unsigned LEB128):
+ * <pre>
+ * "MICROHABITS_V2"  14 ASCII bytes
+ * flags             1 byte, bit 0 = records carry a summary
+ * habitCount        varint
+ * per habit:
+ *   id              2 x long (most, least significant bits)
+ *   name            varint length + UTF-8 bytes
+ *   description     varint length + UTF-8 bytes
+ *   summary         longestStreak varint; if it is not 0, currentStreak varint
+ *                   and zigzag varint epoch day of the last completion
+ *   historyLength   varint byte count of the history block
+ *   history block:
+ *     encoding      1 byte: 0 = empty, 1 = runs, 2 = bitmap
+ *     startDay      zigzag varint epoch day of the first recorded day
+ *     runs:         varint count, then per run varint (length &lt;&lt; 2 | state)
+ *                   with state 0 = not recorded, 1 = completed, 2 = not completed
+ *     bitmap:       varint span in days, then span/8 bytes of completed bits
+ *                   followed by span/8 bytes of not-completed bits
+ * </pre>
+ * Each habit uses whichever of runs or bitmap is smaller.
+ * The summary lets a reader show a habit and skip its history block until it is needed.
+ */
+final class V2BinaryWriter {
+
+    static final byte[] MAGIC = "MICROHABITS_V2".getBytes(StandardCharsets.US_ASCII);
+
+    static final int FLAG_SUMMARY = 1;
+
+    static final int ENCODING_EMPTY = 0;
+    static final int ENCODING_RUNS = 1;
+    static final int ENCODING_BITMAP = 2;
+
+    static final int STATE_NONE = 0;
+    static final int STATE_DONE = 1;
+    static final int STATE_NOT_DONE = 2;
+
+    private final DataOutputStream out;
+
+    // Reused per habit
+    private final ByteSink history = new ByteSink();
+    private final ByteSink runs = new ByteSink();
+
+    // Run being built while walking a habit's history
+    private long firstDay;
+    private long runStart;
+    private long runEnd;
+    private int runState;
+    private int runCount;
+    private long lastDay;
+
+    V2BinaryWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Writes the header followed by one record per habit, then flushes.
+     */
+    void write(List<Habit> habits) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(FLAG_SUMMARY);
+        writeVarint(out, habits.size());
+
+        for (Habit h : habits) {
+            writeHabit(h);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes one habit record without the header; used for the segments of the V3 layout.
+     */
+    void writeRecord(Habit h) throws IOException {
+        writeHabit(h);
+    }
+
+    private void writeHabit(Habit h) throws IOException {
+        out.writeLong(h.getId().getMostSignificantBits());
+        out.writeLong(h.getId().getLeastSignificantBits());
+        writeString(h.getName());
+        writeString(h.getDescription());
+        writeSummary(h.getSummary());
+
+        encodeHistory(h);
+        writeVarint(out, history.size());
+        history.writeTo(out);
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeSummary(HistorySummary summary) throws IOException {
+        writeVarint(out, summary.longestStreak());
+        if (summary.longestStreak() > 0) {
+            writeVarint(out, summary.currentStreak());
+            writeVarint(out, zigzag(summary.lastCompletedDay()));
+        }
+    }
+
+    // Fills the history buffer with the smaller of the run and bitmap encodings
+    private void encodeHistory(Habit h) {
+        history.reset();
+        runs.reset();
+        runCount = 0;
+        firstDay = Long.MIN_VALUE;
+
+        h.forEachDay((day, completed) -> {
+            int state = completed ? STATE_DONE : STATE_NOT_DONE;
+            if (firstDay == Long.MIN_VALUE) {
+                firstDay = day;
+                startRun(day, state);
+            } else if (day == runEnd + 1 && state == runState) {
+                runEnd = day;
+            } else {
+                endRun();
+                if (day > runEnd + 1) {
+                    runs.writeVarint((day - runEnd - 1) << 2 | STATE_NONE);
+                    runCount++;
+                }
+                startRun(day, state);
+            }
+            lastDay = day;
+        });
+
+        if (firstDay == Long.MIN_VALUE) {
+            history.write(ENCODING_EMPTY);
+            return;
+        }
+        endRun();
+
+        long span = lastDay - firstDay + 1;
+        long bitmapBytes = 2 * ((span + 7) / 8);
+
+        if (runs.size() + 5 <= bitmapBytes) {
+            history.write(ENCODING_RUNS);
+            history.writeVarint(zigzag(firstDay));
+            history.writeVarint(runCount);
+            history.append(runs);
+        } else {
+            history.write(ENCODING_BITMAP);
+            history.writeVarint(zigzag(firstDay));
+            history.writeVarint(span);
+            writeBitmap(h, (int) span);
+        }
+    }
+
+    private void startRun(long day, int state) {
+        runStart = day;
+        runEnd = day;
+        runState = state;
+    }
+
+    private void endRun() {
+        runs.writeVarint((runEnd - runStart + 1) << 2 | runState);
+        runCount++;
+    }
+
+    private void writeBitmap(Habit h, int span) {
+        int bytes = (span + 7) / 8;
+        byte[] done = new byte[bytes];
+        byte[] notDone = new byte[bytes];
+        long start = firstDay;
+
+        h.forEachDay((day, completed) -> {
+            int offset = (int) (day - start);
+            byte[] target = completed ? done : notDone;
+            target[offset >>> 3] |= (byte) (1 << (offset & 7));
+        });
+
+        history.write(done, 0, bytes);
+        history.write(notDone, 0, bytes);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    // Growable byte buffer that can be reused without reallocating
+    private static final class ByteSink {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] src, int off, int len) {
+            ensure(len);
+            System.arraycopy(src, off, bytes, size, len);
+            size += len;
+        }
+
+        void append(ByteSink other) {
+            write(other.bytes, 0, other.size);
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
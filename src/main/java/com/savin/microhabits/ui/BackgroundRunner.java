@@ -0,0 +1,135 @@
+package com.savin.microhabits.ui;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs slow work (saving, loading) on a shared virtual-thread executor.
+ *
+ * Work is grouped by key. While a task for a key is running, one more request
+ * for that key is queued and any further ones are dropped, so a burst of saves
+ * collapses into the running save plus one follow-up that sees the latest data.
+ * The busy overlay only appears if something is still running after a short delay.
+ * A key counts as busy until its task's thread has returned, even after a cancel, so the
+ * next task for it never overlaps a cancelled one that is still winding down.
+ * All methods must be called on the FX thread.
+ */
+final class BackgroundRunner {
+
+    // Shorter operations finish without the overlay flashing on screen
+    private static final Duration OVERLAY_DELAY = Duration.millis(250);
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("microhabits-bg-", 0).factory());
+
+    private final Consumer<String> showOverlay;
+    private final Runnable hideOverlay;
+    private final Consumer<Throwable> onError;
+
+    private final Map<String, Task<Void>> running = new HashMap<>();
+    private final Map<String, Task<Void>> queued = new HashMap<>();
+
+    private final PauseTransition overlayDelay = new PauseTransition(OVERLAY_DELAY);
+    private String overlayMessage;
+
+    BackgroundRunner(Consumer<String> showOverlay, Runnable hideOverlay, Consumer<Throwable> onError) {
+        this.showOverlay = showOverlay;
+        this.hideOverlay = hideOverlay;
+        this.onError = onError;
+        overlayDelay.setOnFinished(e -> {
+            if (!running.isEmpty()) {
+                showOverlay.accept(overlayMessage);
+            }
+        });
+    }
+
+    /**
+     * Runs the work for a key in the background, then calls onSuccess on the FX thread.
+     * If the key is busy the request is queued once; extra requests while one is queued are dropped.
+     */
+    void submit(String key, String message, Callable<?> work, Runnable onSuccess) {
+        if (queued.containsKey(key)) {
+            return;
+        }
+
+        Task<Void> task = new Task<>() {
+            {
+                updateTitle(message);
+            }
+
+            @Override
+            protected Void call() throws Exception {
+                work.call();
+                return null;
+            }
+        };
+        task.setOnSucceeded(e -> onSuccess.run());
+        task.setOnFailed(e -> onError.accept(task.getException()));
+
+        if (running.containsKey(key)) {
+            queued.put(key, task);
+        } else {
+            start(key, task);
+        }
+    }
+
+    /**
+     * Cancels the queued and running work for every key.
+     */
+    void cancelAll() {
+        List<Task<Void>> tasks = new ArrayList<>(queued.values());
+        queued.clear();
+        tasks.addAll(running.values());
+        for (Task<Void> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels any outstanding work and stops the executor.
+     */
+    void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    private void start(String key, Task<Void> task) {
+        running.put(key, task);
+        overlayMessage = task.getTitle();
+        overlayDelay.playFromStart();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                // Posted after the task's own state change, so its success or failure handler runs first
+                Platform.runLater(() -> finished(key, task));
+            }
+        });
+    }
+
+    // Called once the task's thread is done with it, whether it succeeded, failed or was cancelled
+    private void finished(String key, Task<Void> task) {
+        if (!running.remove(key, task)) {
+            return;
+        }
+
+        Task<Void> next = queued.remove(key);
+        if (next != null && !executor.isShutdown()) {
+            start(key, next);
+        } else if (running.isEmpty()) {
+            overlayDelay.stop();
+            hideOverlay.run();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.savin.microhabits.ui;
+
+import com.savin.microhabits.model.Habit;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * List cell that shows one habit as a card.
+ * The card nodes and button handlers are created once per cell and reused
+ * as the ListView scrolls, so only visible habits cost any scene graph.
+ */
+public class HabitCell extends ListCell<Habit> {
+
+    private final Label name = new Label();
+    private final Text desc = new Text();
+    private final Label streak = new Label();
+    private final VBox card;
+    private final ToIntFunction<Habit> streakToday;
+
+    /**
+     * @param streakToday gives the streak shown on the card, so redraws can use cached stats
+     */
+    public HabitCell(ToIntFunction<Habit> streakToday,
+                     Consumer<Habit> onDone, Consumer<Habit> onEdit, Consumer<Habit> onDelete) {
+        this.streakToday = streakToday;
+        name.getStyleClass().add("card-title");
+
+        desc.getStyleClass().add("card-desc");
+        desc.wrappingWidthProperty().set(420);
+
+        streak.getStyleClass().add("streak");
+
+        Button doneBtn = new Button("Mark Done Today");
+        doneBtn.getStyleClass().add("secondary-btn");
+
+        Button editBtn = new Button("Edit");
+        editBtn.getStyleClass().add("ghost-btn");
+
+        Button deleteBtn = new Button("Delete");
+        deleteBtn.getStyleClass().add("danger-btn");
+
+        // Handlers read the current item, so they survive cell reuse
+        doneBtn.setOnAction(e -> onDone.accept(getItem()));
+        editBtn.setOnAction(e -> onEdit.accept(getItem()));
+        deleteBtn.setOnAction(e -> onDelete.accept(getItem()));
+
+        HBox buttons = new HBox(8, editBtn, deleteBtn, doneBtn);
+        buttons.setAlignment(Pos.CENTER_RIGHT);
+
+        HBox bottomRow = new HBox(12, streak, new Region(), buttons);
+        HBox.setHgrow(bottomRow.getChildren().get(1), Priority.ALWAYS);
+        bottomRow.setAlignment(Pos.CENTER_LEFT);
+
+        card = new VBox(8, name, desc, bottomRow);
+        card.getStyleClass().add("card");
+
+        getStyleClass().add("habit-cell");
+        setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+    }
+
+    @Override
+    protected void updateItem(Habit habit, boolean empty) {
+        super.updateItem(habit, empty);
+
+        if (empty || habit == null) {
+            setGraphic(null);
+            return;
+        }
+
+        name.setText(habit.getName());
+        desc.setText(habit.getDescription().isBlank() ? "No description" : habit.getDescription());
+        streak.setText("Streak: " + streakToday.applyAsInt(habit));
+        setGraphic(card);
+    }
+}
@@ -1,9 +1,17 @@
 package com.savin.microhabits.ui;
 
+import com.savin.microhabits.metrics.LatencyHistogram;
+import com.savin.microhabits.metrics.Metrics;
+import com.savin.microhabits.metrics.RefreshEvent;
 import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.AutoSaver;
+import com.savin.microhabits.service.HabitEvent;
 import com.savin.microhabits.service.HabitService;
 import com.savin.microhabits.storage.FileStorage;
-import javafx.concurrent.Task;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Parent;
@@ -11,8 +19,8 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.ProgressIndicator;
-import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.CornerRadii;
@@ -25,29 +33,52 @@ import javafx.scene.paint.Color;
 import javafx.scene.paint.CycleMethod;
 import javafx.scene.paint.LinearGradient;
 import javafx.scene.paint.Stop;
-import javafx.scene.text.Text;
+import javafx.util.Duration;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * Main UI view for managing habits.
  */
 public class HomeView {
 
+    private static final LatencyHistogram REFRESH_TIME = Metrics.histogram("ui.refreshCards");
+
     private final HabitService habitService;
     private final FileStorage storage;
+    private final AutoSaver autoSaver;
 
-    private final VBox cardsBox = new VBox(12);
+    // Only the visible rows get cells; the list holds the habits in display order
+    private final ObservableList<Habit> items = FXCollections.observableArrayList();
+    private final ListView<Habit> habitList = new ListView<>(items);
+    // Row of each habit in items, kept in step with it so an event finds its row without a scan
+    private final Map<UUID, Integer> rows = new HashMap<>();
     private final Label emptyLabel = new Label("No habits yet. Click Add Habit to start");
 
     private final StackPane rootStack = new StackPane();
     private final VBox overlay = new VBox(10);
     private final ProgressIndicator spinner = new ProgressIndicator();
     private final Label overlayText = new Label("Working...");
+    private final Button cancelBtn = new Button("Cancel");
+
+    // Redraws the cards after local midnight, when every "today" streak changes
+    private final PauseTransition midnightTimer = new PauseTransition();
 
-    public HomeView(HabitService habitService, FileStorage storage) {
+    private final BackgroundRunner background = new BackgroundRunner(
+            this::showOverlay,
+            () -> setOverlayVisible(false),
+            ex -> showError("Operation failed", ex == null ? "Unknown error." : ex.getMessage()));
+
+    public HomeView(HabitService habitService, FileStorage storage, AutoSaver autoSaver) {
         this.habitService = habitService;
         this.storage = storage;
+        this.autoSaver = autoSaver;
         buildOverlay();
     }
 
@@ -69,14 +100,15 @@ public class HomeView {
         header.setAlignment(Pos.CENTER_LEFT);
         header.getStyleClass().add("header");
 
-        cardsBox.getStyleClass().add("cards");
         emptyLabel.getStyleClass().add("muted");
 
-        ScrollPane scroll = new ScrollPane(cardsBox);
-        scroll.setFitToWidth(true);
-        scroll.getStyleClass().add("scroll");
+        habitList.getStyleClass().addAll("habit-list", "scroll");
+        habitList.setPlaceholder(emptyLabel);
+        habitList.setFocusTraversable(false);
+        habitList.setCellFactory(list -> new HabitCell(this::streakToday, this::markDone, this::editHabit, this::confirmDelete));
+        VBox.setVgrow(habitList, Priority.ALWAYS);
 
-        VBox content = new VBox(14, header, scroll);
+        VBox content = new VBox(14, header, habitList);
         content.setPadding(new Insets(18));
         content.getStyleClass().add("root");
         content.setBackground(createGradientBackground());
@@ -87,31 +119,31 @@ public class HomeView {
         addBtn.setOnAction(e -> {
             AddHabitDialog dialog = new AddHabitDialog();
             dialog.showAndWait().ifPresent(result -> {
-                habitService.addHabit(result.name(), result.description());
-                refreshCards();
+                Habit habit = habitService.addHabit(result.name(), result.description());
+                habitList.scrollTo(habit);
             });
         });
 
-        saveBtn.setOnAction(e -> runInBackground(
+        saveBtn.setOnAction(e -> background.submit(
+                "save",
                 "Saving...",
                 () -> {
-                    storage.save(habitService.getHabitsReadOnly());
+                    autoSaver.saveNow();
                     return null;
                 },
                 () -> showInfo("Saved", "Your habits were saved successfully.")
         ));
 
-        loadBtn.setOnAction(e -> runInBackground(
-                "Loading...",
-                () -> {
-                    List<Habit> loaded = storage.load();
-                    habitService.replaceAll(loaded);
-                    return null;
-                },
-                this::refreshCards
-        ));
+        loadBtn.setOnAction(e -> loadInBackground());
 
+        habitService.addListener(this::onHabitsChanged);
         refreshCards();
+
+        midnightTimer.setOnFinished(e -> {
+            habitList.refresh();
+            scheduleMidnightRefresh();
+        });
+        scheduleMidnightRefresh();
         return rootStack;
     }
 
@@ -125,126 +157,126 @@ public class HomeView {
         return new Background(new BackgroundFill(gradient, CornerRadii.EMPTY, Insets.EMPTY));
     }
 
-    private void refreshCards() {
-        cardsBox.getChildren().clear();
-
-        if (habitService.getHabitsReadOnly().isEmpty()) {
-            cardsBox.getChildren().add(emptyLabel);
-            return;
+    // Service events may come from a background load; the list is only touched on the FX thread
+    private void onHabitsChanged(List<HabitEvent> events) {
+        if (Platform.isFxApplicationThread()) {
+            applyChanges(events);
+        } else {
+            Platform.runLater(() -> applyChanges(events));
         }
+    }
 
-        for (Habit habit : habitService.getHabitsReadOnly()) {
-            cardsBox.getChildren().add(createHabitCard(habit));
+    private void applyChanges(List<HabitEvent> events) {
+        for (HabitEvent event : events) {
+            switch (event.type()) {
+                case RELOADED -> refreshCards();
+                case ADDED -> habitService.findById(event.habitId())
+                        .filter(habit -> !rows.containsKey(habit.getId()))
+                        .ifPresent(habit -> {
+                            rows.put(habit.getId(), items.size());
+                            items.add(habit);
+                        });
+                case REMOVED -> removeRow(event.habitId());
+                case UPDATED, COMPLETION_CHANGED -> refreshHabit(event.habitId());
+            }
         }
     }
 
-    private Parent createHabitCard(Habit habit) {
-        Label name = new Label(habit.getName());
-        name.getStyleClass().add("card-title");
-
-        Text desc = new Text(habit.getDescription().isBlank() ? "No description" : habit.getDescription());
-        desc.getStyleClass().add("card-desc");
-        desc.wrappingWidthProperty().set(420);
+    private int streakToday(Habit habit) {
+        return habitService.getStatsToday(habit.getId()).map(HabitService.Stats::currentStreak).orElse(0);
+    }
 
-        Label streak = new Label("Streak: " + habit.getStreakToday());
-        streak.getStyleClass().add("streak");
+    private void scheduleMidnightRefresh() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime midnight = LocalDate.now().plusDays(1).atStartOfDay();
+        // A second late, so the new date is in effect when the cells are redrawn
+        midnightTimer.setDuration(Duration.millis(java.time.Duration.between(now, midnight).toMillis() + 1000));
+        midnightTimer.playFromStart();
+    }
 
-        Button doneBtn = new Button("Mark Done Today");
-        doneBtn.getStyleClass().add("secondary-btn");
+    // Full rebuild of the list contents, used after loading
+    private void refreshCards() {
+        RefreshEvent event = new RefreshEvent();
+        event.begin();
+        long start = System.nanoTime();
+        items.setAll(habitService.getHabitsReadOnly());
+        rows.clear();
+        renumberFrom(0);
+        REFRESH_TIME.recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.habits = items.size();
+            event.commit();
+        }
+    }
 
-        Button editBtn = new Button("Edit");
-        editBtn.getStyleClass().add("ghost-btn");
+    // Swaps in the service's current copy of the habit, which redraws just its cell
+    private void refreshHabit(UUID habitId) {
+        Integer row = rows.get(habitId);
+        if (row != null) {
+            habitService.findById(habitId).ifPresent(habit -> items.set(row, habit));
+        }
+    }
 
-        Button deleteBtn = new Button("Delete");
-        deleteBtn.getStyleClass().add("danger-btn");
+    // The rows below the removed one move up, as they do in items
+    private void removeRow(UUID habitId) {
+        Integer row = rows.remove(habitId);
+        if (row != null) {
+            items.remove((int) row);
+            renumberFrom(row);
+        }
+    }
 
-        doneBtn.setOnAction(e -> {
-            habitService.markToday(habit.getId(), true);
-            refreshCards();
-        });
+    private void renumberFrom(int row) {
+        for (int i = row; i < items.size(); i++) {
+            rows.put(items.get(i).getId(), i);
+        }
+    }
 
-        editBtn.setOnAction(e -> {
-            EditHabitDialog dialog = new EditHabitDialog(habit);
-            dialog.showAndWait().ifPresent(result -> {
-                try {
-                    habitService.updateHabit(habit.getId(), result.name(), result.description());
-                    refreshCards();
-                } catch (IllegalArgumentException ex) {
-                    showError("Invalid input", ex.getMessage());
-                }
-            });
-        });
+    private void markDone(Habit habit) {
+        habitService.markToday(habit.getId(), true);
+    }
 
-        deleteBtn.setOnAction(e -> {
-            Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
-            confirm.setTitle("Delete Habit");
-            confirm.setHeaderText("Delete this habit?");
-            confirm.setContentText(habit.getName());
-
-            confirm.showAndWait().ifPresent(btn -> {
-                if (btn == ButtonType.OK) {
-                    habitService.deleteHabit(habit.getId());
-                    refreshCards();
-                }
-            });
+    private void editHabit(Habit habit) {
+        EditHabitDialog dialog = new EditHabitDialog(habit);
+        dialog.showAndWait().ifPresent(result -> {
+            try {
+                habitService.updateHabit(habit.getId(), result.name(), result.description());
+            } catch (IllegalArgumentException ex) {
+                showError("Invalid input", ex.getMessage());
+            }
         });
-
-        HBox actions = new HBox(8, editBtn, deleteBtn, doneBtn);
-        actions.setAlignment(Pos.CENTER_RIGHT);
-
-        HBox bottomRow = new HBox(12, streak, new Region(), actions);
-        HBox.setHgrow(bottomRow.getChildren().get(1), Priority.ALWAYS);
-        bottomRow.setAlignment(Pos.CENTER_LEFT);
-
-        VBox card = new VBox(8, name, desc, bottomRow);
-        card.getStyleClass().add("card");
-
-        return card;
     }
 
-    private void runInBackground(String message, BackgroundWork work, Runnable onSuccessUi) {
-        overlayText.setText(message);
-        setOverlayVisible(true);
+    private void confirmDelete(Habit habit) {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Delete Habit");
+        confirm.setHeaderText("Delete this habit?");
+        confirm.setContentText(habit.getName());
 
-        Task<Void> task = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                Thread.sleep(600); // makes the overlay visible for demos/screenshots
-                work.run();
-                return null;
+        confirm.showAndWait().ifPresent(btn -> {
+            if (btn == ButtonType.OK) {
+                habitService.deleteHabit(habit.getId());
             }
-        };
-
-        task.setOnSucceeded(e -> {
-            setOverlayVisible(false);
-            onSuccessUi.run();
         });
-
-        task.setOnFailed(e -> {
-            setOverlayVisible(false);
-            Throwable ex = task.getException();
-            showError("Operation failed", ex == null ? "Unknown error." : ex.getMessage());
-        });
-
-        Thread t = new Thread(task, "microhabits-bg-task");
-        t.setDaemon(true);
-        t.start();
-    }
-
-    @FunctionalInterface
-    private interface BackgroundWork {
-        Void run() throws Exception;
     }
 
     private void buildOverlay() {
         overlay.getStyleClass().add("overlay");
         overlay.setAlignment(Pos.CENTER);
         overlay.setPadding(new Insets(18));
-        overlay.getChildren().addAll(spinner, overlayText);
+        cancelBtn.getStyleClass().add("ghost-btn");
+        cancelBtn.setOnAction(e -> background.cancelAll());
+        overlay.getChildren().addAll(spinner, overlayText, cancelBtn);
         overlay.setVisible(false);
         overlay.setManaged(false);
     }
 
+    private void showOverlay(String message) {
+        overlayText.setText(message);
+        setOverlayVisible(true);
+    }
+
     private void setOverlayVisible(boolean visible) {
         overlay.setVisible(visible);
         overlay.setManaged(visible);
@@ -267,20 +299,39 @@ public class HomeView {
     }
 
     public void loadOnStartup() {
-        runInBackground(
+        loadInBackground();
+    }
+
+    private void loadInBackground() {
+        background.submit(
+                "load",
                 "Loading...",
                 () -> {
                     List<Habit> loaded = storage.load();
                     habitService.replaceAll(loaded);
                     return null;
                 },
-                this::refreshCards
+                () -> {}
         );
     }
 
     public void saveOnExit() {
+        midnightTimer.stop();
+        background.shutdown();
+        autoSaver.close();
         try {
-            storage.save(habitService.getHabitsReadOnly());
+            // With a journal every change is already logged; only the tail needs flushing.
+            // Otherwise, or if the journal could not write it, the changes since the last autosave are still pending.
+            boolean journaled;
+            try {
+                journaled = storage.closeJournal();
+            } catch (IOException ex) {
+                System.err.println("Journal flush failed: " + ex.getMessage());
+                journaled = false;
+            }
+            if (!journaled) {
+                autoSaver.saveNow();
+            }
         } catch (Exception ex) {
             System.err.println("Auto-save failed: " + ex.getMessage());
         }
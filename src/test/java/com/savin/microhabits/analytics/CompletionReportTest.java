@@ -0,0 +1,54 @@
+package com.savin.microhabits.analytics;
+
+import com.savin.microhabits.model.Habit;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompletionReportTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2024, 6, 30);
+
+    @Test
+    void ancientCompletionsDoNotWidenTheMatrix() {
+        Habit habit = new Habit("Read", "");
+        habit.markCompleted(LocalDate.of(1, 1, 1), true);
+        habit.markCompleted(AS_OF, true);
+
+        CompletionMatrix matrix = CompletionMatrix.of(List.of(habit), AS_OF.minusDays(364), AS_OF);
+        assertEquals(AS_OF.minusDays(364), matrix.firstDate());
+        assertEquals(1, matrix.countCompleted(0, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        HabitStats stats = CompletionReport.of(List.of(habit), AS_OF).habits().get(0);
+        assertEquals(1, stats.currentStreak());
+        assertEquals(1, stats.bestStreak());
+    }
+
+    @Test
+    void streaksLongerThanTheWindowComeFromTheHabit() {
+        Habit habit = new Habit("Walk", "");
+        LocalDate start = AS_OF.minusDays(999);
+        for (LocalDate day = start; !day.isAfter(AS_OF); day = day.plusDays(1)) {
+            habit.markCompleted(day, true);
+        }
+        // A gap just before the report window, then an old long run
+        Habit gapped = new Habit("Swim", "");
+        for (LocalDate day = start; day.isBefore(AS_OF.minusDays(400)); day = day.plusDays(1)) {
+            gapped.markCompleted(day, true);
+        }
+        gapped.markCompleted(AS_OF.minusDays(10), true);
+
+        CompletionReport report = CompletionReport.of(List.of(habit, gapped), AS_OF);
+        assertEquals(1000, report.habits().get(0).currentStreak());
+        assertEquals(1000, report.habits().get(0).bestStreak());
+        assertEquals(1.0, report.habits().get(0).rate365());
+        assertEquals(0, report.habits().get(1).currentStreak());
+        assertEquals(599, report.habits().get(1).bestStreak());
+        // Walk gives 52 per weekday; Swim adds one on AS_OF - 10, a Thursday
+        assertArrayEquals(new int[] {52, 52, 52, 53, 52, 52, 52}, report.weekdayTotals());
+    }
+}
@@ -0,0 +1,89 @@
+package com.savin.microhabits.cli;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitCliTest {
+
+    @TempDir
+    Path dir;
+
+    private final HabitService service = new HabitService();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final HabitCli cli = new HabitCli(service, new PrintStream(new ByteArrayOutputStream(), true),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+
+    @Test
+    void importDataInABatchRunsBetweenItsLines() throws IOException {
+        Path csv = dir.resolve("habits.csv");
+        Files.writeString(csv, "id,name,description\n" + UUID.randomUUID() + ",Walk,\n");
+
+        boolean ok = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> batch("add Read\nimport-data " + csv + "\nmark Walk done\nimport-data - csv\n"));
+
+        assertFalse(ok);
+        assertEquals(List.of("Read", "Walk"), service.getHabitsReadOnly().stream().map(Habit::getName).toList());
+        assertEquals(1, service.getHabitsReadOnly().get(1).getStreakToday());
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("line 4: import-data cannot read stdin"), err::toString);
+    }
+
+    @Test
+    void importLeavesAnUnreadableSourceInPlace() throws IOException {
+        Path source = dir.resolve("other.dat");
+        FileStorage storage = new FileStorage(source, SaveFormat.V3_SEGMENTED);
+        storage.save(List.of(new Habit("Read", "")));
+        storage.save(List.of(new Habit("Walk", "")));
+        byte[] corrupt = {'M', 'I', 'C', 'R', 'O', 0x7f, 0x7f, 0x7f};
+        Files.write(source, corrupt);
+
+        assertTrue(cli.run("import", List.of(source.toString())));
+
+        assertEquals(List.of("Read"), service.getHabitsReadOnly().stream().map(Habit::getName).toList());
+        assertArrayEquals(corrupt, Files.readAllBytes(source));
+        assertFalse(Files.exists(dir.resolve("other.dat.corrupt")));
+    }
+
+    @Test
+    void anyFailureInABatchIsReportedWithItsLine() throws IOException {
+        HabitService failing = new HabitService() {
+            @Override
+            public void markToday(UUID habitId, boolean completed) {
+                throw new IllegalStateException("Disk on fire.");
+            }
+        };
+        HabitCli failingCli = new HabitCli(failing, new PrintStream(new ByteArrayOutputStream(), true),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+
+        boolean ok = failingCli.runBatch(new BufferedReader(new StringReader("add Read\nmark Read done\nadd Walk\n")));
+
+        assertFalse(ok);
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("line 2: Disk on fire."), err::toString);
+        assertEquals(2, failing.getHabitsReadOnly().size());
+    }
+
+    private boolean batch(String lines) throws IOException {
+        return cli.runBatch(new BufferedReader(new StringReader(lines)));
+    }
+}
@@ -0,0 +1,33 @@
+package com.savin.microhabits.exchange;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitImporterTest {
+
+    @Test
+    void unterminatedQuoteFailsOnlyItsRow() throws IOException {
+        UUID walk = UUID.randomUUID();
+        String csv = "id,name,description\n"
+                + UUID.randomUUID() + ",Read,\"never closed\n"
+                + "x".repeat(CsvReader.DEFAULT_MAX_FIELD_CHARS) + "\n"
+                + walk + ",Walk,\n";
+        HabitService service = new HabitService();
+
+        HabitImporter.Result result = new HabitImporter(service).importFrom(new StringReader(csv), ExchangeFormat.CSV);
+
+        assertEquals(1, result.failed());
+        assertTrue(result.errors().get(0).startsWith("line 2: Field longer than"), result.errors().get(0));
+        assertEquals(List.of("Walk"), service.getHabitsReadOnly().stream().map(Habit::getName).toList());
+        assertEquals(walk, service.getHabitsReadOnly().get(0).getId());
+    }
+}
@@ -0,0 +1,144 @@
+package com.savin.microhabits.http;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitHttpServerTest {
+
+    private HabitService service;
+    private HabitHttpServer server;
+    private String host;
+    private String auth;
+
+    @BeforeEach
+    void start() throws IOException {
+        service = new HabitService();
+        server = new HabitHttpServer(service, 0);
+        server.start();
+        host = "127.0.0.1:" + server.getPort();
+        auth = "Authorization: Bearer " + server.getToken() + "\r\n";
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    @Test
+    void requestsWithoutTheTokenAreRejected() throws IOException {
+        assertEquals(401, status(request("GET", "/habits", host, "", null)));
+        assertEquals(401, status(request("GET", "/habits", host, "Authorization: Bearer nope\r\n", null)));
+        assertEquals(401, status(request("GET", "/metrics", host, "", null)));
+        assertEquals(200, status(request("GET", "/habits", host, auth, null)));
+    }
+
+    @Test
+    void foreignHostsAndOriginsAreRejected() throws IOException {
+        // DNS rebinding: a page on evil.example resolved to 127.0.0.1
+        assertEquals(403, status(request("GET", "/habits", "evil.example:" + server.getPort(), auth, null)));
+        assertEquals(403, status(request("GET", "/habits", "localhost:1", auth, null)));
+        assertEquals(403, status(request("GET", "/habits", host, auth + "Origin: http://evil.example\r\n", null)));
+        assertEquals(200, status(request("GET", "/habits", "localhost:" + server.getPort(), auth, null)));
+        assertEquals(200, status(request("GET", "/habits", host, auth + "Origin: http://" + host + "\r\n", null)));
+    }
+
+    @Test
+    void postsTakeJsonBodies() throws IOException {
+        String created = request("POST", "/habits", host, auth + "Content-Type: application/json\r\n",
+                "{\"name\":\"Read\",\"description\":\"10 pages\"}");
+        assertEquals(201, status(created));
+        Habit habit = service.getHabitsReadOnly().get(0);
+        assertEquals("10 pages", habit.getDescription());
+
+        // A form post, as a cross-site page could send, is refused
+        assertEquals(415, status(request("POST", "/habits", host, auth + "Content-Type: text/plain\r\n",
+                "{\"name\":\"Walk\"}")));
+        assertEquals(400, status(request("POST", "/habits", host, auth + "Content-Type: application/json\r\n",
+                "{\"name\":")));
+        assertEquals(1, service.getHabitsReadOnly().size());
+
+        String mark = "/habits/" + habit.getId() + "/mark";
+        assertEquals(200, status(request("POST", mark, host, auth + "Content-Type: application/json\r\n", "{}")));
+        assertTrue(service.findById(habit.getId()).orElseThrow().isCompletedOn(LocalDate.now()));
+        assertEquals(200, status(request("POST", mark, host, auth + "Content-Type: application/json\r\n",
+                "{\"done\":false}")));
+        assertFalse(service.findById(habit.getId()).orElseThrow().isCompletedOn(LocalDate.now()));
+    }
+
+    @Test
+    void markNeedsABooleanAndAnExistingHabit() throws IOException {
+        Habit habit = service.addHabit("Read", "");
+        String mark = "/habits/" + habit.getId() + "/mark";
+        String json = auth + "Content-Type: application/json\r\n";
+
+        for (String body : new String[] {"{\"done\":\"false\"}", "{\"done\":0}", "{\"done\":null}", "{\"done\":\"yes\"}"}) {
+            assertEquals(400, status(request("POST", mark, host, json, body)), body);
+        }
+        assertFalse(service.findById(habit.getId()).orElseThrow().isCompletedOn(LocalDate.now()));
+        assertEquals(200, status(request("POST", mark, host, json, "{\"done\": true}")));
+        assertTrue(service.findById(habit.getId()).orElseThrow().isCompletedOn(LocalDate.now()));
+
+        // Removed between the lookup and the change
+        server.close();
+        service = new HabitService() {
+            @Override
+            public void markToday(UUID habitId, boolean completed) {
+                removeHabit(habitId);
+                super.markToday(habitId, completed);
+            }
+        };
+        habit = service.addHabit("Walk", "");
+        server = new HabitHttpServer(service, 0);
+        server.start();
+        host = "127.0.0.1:" + server.getPort();
+        json = "Authorization: Bearer " + server.getToken() + "\r\nContent-Type: application/json\r\n";
+        assertEquals(404, status(request("POST", "/habits/" + habit.getId() + "/mark", host, json, "{}")));
+    }
+
+    @Test
+    void onlyExactPathsAreServed() throws IOException {
+        assertEquals(404, status(request("GET", "/habitsX", host, auth, null)));
+        assertEquals(404, status(request("GET", "/metricsX", host, auth, null)));
+        assertEquals(200, status(request("GET", "/habits/", host, auth, null)));
+        assertEquals(200, status(request("GET", "/metrics", host, auth, null)));
+    }
+
+    // Raw HTTP/1.1, since the JDK clients do not let callers set the Host header
+    private String request(String method, String path, String hostHeader, String headers, String body)
+            throws IOException {
+        byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        String head = method + " " + path + " HTTP/1.1\r\n"
+                + "Host: " + hostHeader + "\r\n"
+                + headers
+                + "Content-Length: " + content.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(head.getBytes(StandardCharsets.US_ASCII));
+            out.write(content);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int status(String response) {
+        return Integer.parseInt(response.substring(9, 12));
+    }
+}
@@ -0,0 +1,122 @@
+package com.savin.microhabits.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DayBitSetTest {
+
+    // Days checked against a plain array; spans negative epoch days and several 64-day words
+    private static final int FIRST = -300;
+    private static final int LAST = 400;
+
+    @Test
+    void runsCrossWordBoundaries() {
+        DayBitSet days = new DayBitSet();
+        for (long day = 60; day <= 70; day++) {
+            days.set(day, true);
+        }
+
+        assertEquals(11, days.runEndingAt(70));
+        assertEquals(11, days.runStartingAt(60));
+        assertEquals(4, days.runEndingAt(63));
+        assertEquals(7, days.runStartingAt(64));
+        assertEquals(0, days.runEndingAt(71));
+        assertEquals(0, days.runStartingAt(59));
+        assertEquals(11, days.longestRun());
+
+        // Whole words of completed days, then one more on each side
+        for (long day = 127; day <= 256; day++) {
+            days.set(day, true);
+        }
+        assertEquals(130, days.runEndingAt(256));
+        assertEquals(130, days.runStartingAt(127));
+        assertEquals(65, days.runEndingAt(191));
+        assertEquals(66, days.runStartingAt(191));
+        assertEquals(130, days.longestRun());
+    }
+
+    @Test
+    void runsCrossTheOldBaseDayAfterGrowingBackwards() {
+        DayBitSet days = new DayBitSet();
+        for (long day = 128; day < 140; day++) {
+            days.set(day, true);
+        }
+        // Earlier days move the base day back by whole words
+        for (long day = 0; day < 128; day++) {
+            days.set(day, true);
+        }
+        days.set(-1, false);
+
+        assertEquals(140, days.runEndingAt(139));
+        assertEquals(140, days.runStartingAt(0));
+        assertEquals(129, days.runEndingAt(128));
+        assertEquals(0, days.runEndingAt(-1));
+        assertEquals(0, days.runStartingAt(-64));
+        assertEquals(139, days.lastCompletedAtOrBefore(1_000));
+        assertEquals(Long.MIN_VALUE, days.lastCompletedAtOrBefore(-1));
+        assertEquals(140, days.longestRun());
+    }
+
+    @Test
+    void matchesAnArrayOfDays() {
+        Random random = new Random(7);
+        DayBitSet days = new DayBitSet();
+        // 0 = not recorded, 1 = completed, 2 = not completed
+        int[] expected = new int[LAST - FIRST + 1];
+
+        for (int step = 0; step < 3_000; step++) {
+            // Mostly short runs, so runs often start or end next to a word boundary
+            int start = FIRST + random.nextInt(LAST - FIRST + 1);
+            int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 150 : 5);
+            boolean completed = random.nextInt(3) != 0;
+            for (int day = start; day < start + length && day <= LAST; day++) {
+                days.set(day, completed);
+                expected[day - FIRST] = completed ? 1 : 2;
+            }
+            if (step % 100 == 0) {
+                check(days, expected);
+            }
+        }
+        check(days, expected);
+    }
+
+    private static void check(DayBitSet days, int[] expected) {
+        int longest = 0;
+        int recorded = 0;
+        long lastCompleted = Long.MIN_VALUE;
+        for (int day = FIRST; day <= LAST; day++) {
+            int status = expected[day - FIRST];
+            assertEquals(status == 1, days.isCompleted(day), "completed " + day);
+            assertEquals(status != 0, days.isRecorded(day), "recorded " + day);
+            assertEquals(runEndingAt(expected, day), days.runEndingAt(day), "run ending at " + day);
+            assertEquals(runStartingAt(expected, day), days.runStartingAt(day), "run starting at " + day);
+            if (status == 1) {
+                lastCompleted = day;
+            }
+            assertEquals(lastCompleted, days.lastCompletedAtOrBefore(day), "last completed at " + day);
+            longest = Math.max(longest, runEndingAt(expected, day));
+            recorded += status != 0 ? 1 : 0;
+        }
+        assertEquals(longest, days.longestRun());
+        assertEquals(recorded, days.size());
+    }
+
+    private static int runEndingAt(int[] expected, int day) {
+        int run = 0;
+        while (day - run >= FIRST && expected[day - run - FIRST] == 1) {
+            run++;
+        }
+        return run;
+    }
+
+    private static int runStartingAt(int[] expected, int day) {
+        int run = 0;
+        while (day + run <= LAST && expected[day + run - FIRST] == 1) {
+            run++;
+        }
+        return run;
+    }
+}
@@ -0,0 +1,91 @@
+package com.savin.microhabits.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HabitTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void backfilledDaysJoinTheRunsAroundThem() {
+        Habit habit = new Habit("Read", "");
+        mark(habit, 10, 14, true);
+        mark(habit, 0, 4, true);
+        assertEquals(5, habit.getStreak(day(14)));
+        assertEquals(5, habit.getLongestStreak());
+
+        // Fills the gap between the two runs, so the current streak reaches back to day 0
+        mark(habit, 5, 9, true);
+        assertEquals(15, habit.getStreak(day(14)));
+        assertEquals(15, habit.getLongestStreak());
+        assertEquals(day(14), habit.getLastCompletedDate().orElseThrow());
+
+        // A backfill far behind the current streak only changes the longest run
+        mark(habit, -40, -20, true);
+        assertEquals(15, habit.getStreak(day(14)));
+        assertEquals(21, habit.getLongestStreak());
+    }
+
+    @Test
+    void clearingADayInsideARunSplitsIt() {
+        Habit habit = new Habit("Walk", "");
+        mark(habit, 0, 29, true);
+
+        habit.markCompleted(day(20), false);
+        assertEquals(9, habit.getStreak(day(29)));
+        assertEquals(20, habit.getStreak(day(19)));
+        assertEquals(20, habit.getLongestStreak());
+
+        habit.markCompleted(day(5), false);
+        assertEquals(9, habit.getStreak(day(29)));
+        assertEquals(14, habit.getLongestStreak());
+
+        // Clearing the last completed day moves the streak back to the run before it
+        habit.markCompleted(day(29), false);
+        assertEquals(day(28), habit.getLastCompletedDate().orElseThrow());
+        assertEquals(8, habit.getStreak(day(28)));
+        assertEquals(14, habit.getLongestStreak());
+
+        mark(habit, 0, 29, false);
+        assertEquals(0, habit.getLongestStreak());
+        assertEquals(0, habit.getStreak(day(29)));
+        assertEquals(0, habit.getSummary().currentStreak());
+    }
+
+    @Test
+    void incrementalStreaksMatchTheHistory() {
+        Random random = new Random(3);
+        Habit habit = new Habit("Swim", "");
+        for (int step = 0; step < 5_000; step++) {
+            // Days in any order, so backfills, clears and extensions all happen
+            int from = random.nextInt(300);
+            mark(habit, from, from + random.nextInt(6), random.nextInt(4) != 0);
+
+            DayBitSet history = new DayBitSet();
+            habit.forEachDay(history::set);
+            assertEquals(history.longestRun(), habit.getLongestStreak(), "step " + step);
+            long last = history.lastCompletedAtOrBefore(Long.MAX_VALUE);
+            if (last == Long.MIN_VALUE) {
+                assertEquals(0, habit.getSummary().currentStreak(), "step " + step);
+            } else {
+                assertEquals(LocalDate.ofEpochDay(last), habit.getLastCompletedDate().orElseThrow(), "step " + step);
+                assertEquals(history.runEndingAt(last), habit.getSummary().currentStreak(), "step " + step);
+            }
+        }
+    }
+
+    private static void mark(Habit habit, int from, int to, boolean completed) {
+        for (int i = from; i <= to; i++) {
+            habit.markCompleted(day(i), completed);
+        }
+    }
+
+    private static LocalDate day(int offset) {
+        return START.plusDays(offset);
+    }
+}
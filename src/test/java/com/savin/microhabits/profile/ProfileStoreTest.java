@@ -0,0 +1,133 @@
+package com.savin.microhabits.profile;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.storage.FileStorage;
+import com.savin.microhabits.storage.SaveFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProfileStoreTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void idsCannotLeaveTheUserDirectory() throws IOException {
+        try (ProfileStore store = new ProfileStore(root, 4, 2)) {
+            for (String id : new String[] {".", "..", "...", ".hidden", "-x", "a/b", "", "x".repeat(65)}) {
+                assertThrows(IllegalArgumentException.class, () -> store.acquire(id), id);
+                assertThrows(IllegalArgumentException.class, () -> store.fileFor(id), id);
+            }
+            Path file = store.fileFor("a..b");
+            assertEquals(root, file.getParent().getParent().getParent());
+        }
+    }
+
+    @Test
+    void idsDifferingInCaseShareOneProfile() throws IOException {
+        try (ProfileStore store = new ProfileStore(root, 4, 2)) {
+            assertEquals(store.fileFor("alice"), store.fileFor("Alice"));
+            try (ProfileStore.Lease upper = store.acquire("Alice")) {
+                upper.service().addHabit("Read", "");
+                try (ProfileStore.Lease lower = store.acquire("alice")) {
+                    assertEquals("alice", lower.userId());
+                    assertEquals(1, lower.service().getHabitsReadOnly().size());
+                }
+            }
+        }
+    }
+
+    @Test
+    void evictedProfilesAreWrittenBack() throws IOException {
+        try (ProfileStore store = new ProfileStore(root, 1, 2)) {
+            try (ProfileStore.Lease lease = store.acquire("alice")) {
+                lease.service().addHabit("Read", "");
+            }
+            // Loading a second user evicts the first
+            try (ProfileStore.Lease lease = store.acquire("bob")) {
+                lease.service().addHabit("Walk", "");
+            }
+            try (ProfileStore.Lease lease = store.acquire("alice")) {
+                assertEquals(List.of("Read"), names(lease.service().getHabitsReadOnly()));
+            }
+        }
+        assertEquals(List.of("Read"), names(saved("alice")));
+        assertEquals(List.of("Walk"), names(saved("bob")));
+    }
+
+    @Test
+    void concurrentLeasesKeepEveryChange() throws Exception {
+        int threads = 8;
+        int habitsPerThread = 50;
+        try (ProfileStore store = new ProfileStore(root, 1, 2);
+             ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String other = "user" + t;
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < habitsPerThread; i++) {
+                        try (ProfileStore.Lease lease = store.acquire("alice")) {
+                            lease.service().addHabit("Habit " + i, "");
+                        }
+                        // Leasing another user lets alice be evicted and loaded again
+                        try (ProfileStore.Lease lease = store.acquire(other)) {
+                            lease.service().getHabitsReadOnly();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        }
+        assertEquals(threads * habitsPerThread, saved("alice").size());
+    }
+
+    @Test
+    void overlappingSavesNeverWriteAnOlderList() throws Exception {
+        try (ProfileStore store = new ProfileStore(root, 4, 4);
+             ProfileStore.Lease lease = store.acquire("alice");
+             ExecutorService pool = Executors.newFixedThreadPool(2)) {
+            // Each round, the save that takes the pending changes first must not be written last
+            for (int round = 0; round < 200; round++) {
+                CyclicBarrier start = new CyclicBarrier(2);
+                List<Future<?>> done = new ArrayList<>();
+                for (int t = 0; t < 2; t++) {
+                    done.add(pool.submit(() -> {
+                        start.await();
+                        lease.service().addHabit("Habit", "");
+                        lease.save();
+                        return null;
+                    }));
+                }
+                for (Future<?> future : done) {
+                    future.get();
+                }
+                assertEquals(lease.service().getHabitsReadOnly().size(), saved("alice").size(), "round " + round);
+            }
+        }
+    }
+
+    private List<Habit> saved(String userId) throws IOException {
+        try (ProfileStore store = new ProfileStore(root, 1, 1)) {
+            return new FileStorage(store.fileFor(userId), SaveFormat.V3_SEGMENTED).load();
+        }
+    }
+
+    private static List<String> names(List<Habit> habits) {
+        return habits.stream().map(Habit::getName).toList();
+    }
+}
@@ -0,0 +1,93 @@
+package com.savin.microhabits.service;
+
+import com.savin.microhabits.model.DayBitSet;
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.model.HistorySummary;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitServiceTest {
+
+    @Test
+    void batchThatThrowsLeavesNoTrace() {
+        HabitService service = new HabitService();
+        Habit read = service.addHabit("Read", "");
+        service.takePendingChanges();
+        AtomicInteger events = new AtomicInteger();
+        service.addListener(changes -> events.addAndGet(changes.size()));
+
+        assertThrows(IllegalStateException.class, () -> service.batch(() -> {
+            service.addHabit("Walk", "");
+            service.markToday(read.getId(), true);
+            service.updateHabit(read.getId(), "Read more", "");
+            throw new IllegalStateException("stop");
+        }));
+
+        List<Habit> habits = service.getHabitsReadOnly();
+        assertEquals(1, habits.size());
+        assertEquals("Read", habits.get(0).getName());
+        assertFalse(habits.get(0).isCompletedOn(LocalDate.now()));
+        assertEquals(0, events.get());
+
+        // Later changes start from the restored state
+        service.markToday(read.getId(), true);
+        assertTrue(service.findById(read.getId()).orElseThrow().isCompletedOn(LocalDate.now()));
+        assertEquals(1, service.getHabitsReadOnly().size());
+    }
+
+    @Test
+    void publishedHabitsDoNotChange() {
+        HabitService service = new HabitService();
+        Habit read = service.addHabit("Read", "");
+        service.markToday(read.getId(), true);
+        Habit before = service.findById(read.getId()).orElseThrow();
+
+        service.markToday(read.getId(), false);
+
+        assertTrue(before.isCompletedOn(LocalDate.now()));
+        assertFalse(service.findById(read.getId()).orElseThrow().isCompletedOn(LocalDate.now()));
+    }
+
+    @Test
+    void statsDoNotReadLazyHistories() {
+        LocalDate today = LocalDate.now();
+        HistorySummary summary = new HistorySummary(today.toEpochDay(), 3, 5);
+        Habit lazy = new Habit(UUID.randomUUID(), "Read", "", summary, () -> {
+            throw new AssertionError("history read");
+        });
+        HabitService service = new HabitService();
+        service.replaceAll(List.of(lazy));
+
+        HabitService.Stats stats = service.getStats(lazy.getId(), today).orElseThrow();
+        assertEquals(3, stats.currentStreak());
+        assertEquals(5, stats.longestStreak());
+        assertEquals(0, service.getStats(lazy.getId(), today.plusDays(1)).orElseThrow().currentStreak());
+    }
+
+    @Test
+    void updatesForMissingHabitsAreSkipped() {
+        HabitService service = new HabitService();
+        Habit read = service.addHabit("Read", "");
+        UUID removed = UUID.randomUUID();
+        DayBitSet days = new DayBitSet();
+        days.set(LocalDate.of(2024, 1, 1).toEpochDay(), true);
+
+        Set<UUID> skipped = service.applyUpdates(List.of(
+                new HabitService.Update(removed, null, null, days),
+                new HabitService.Update(read.getId(), null, null, days)));
+
+        assertEquals(Set.of(removed), skipped);
+        assertTrue(service.findById(read.getId()).orElseThrow().isCompletedOn(LocalDate.of(2024, 1, 1)));
+        assertEquals(1, service.getHabitsReadOnly().size());
+    }
+}
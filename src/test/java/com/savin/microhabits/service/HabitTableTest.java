@@ -0,0 +1,80 @@
+package com.savin.microhabits.service;
+
+import com.savin.microhabits.model.Habit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HabitTableTest {
+
+    @Test
+    void matchesLinkedHashMapAndKeepsPublishedViews() {
+        Random random = new Random(42);
+        HabitTable table = new HabitTable();
+        Map<UUID, Habit> expected = new LinkedHashMap<>();
+        List<UUID> ids = new ArrayList<>();
+        List<HabitTable.View> views = new ArrayList<>();
+        List<List<Habit>> viewContents = new ArrayList<>();
+
+        for (int step = 0; step < 50_000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5 || ids.isEmpty()) {
+                Habit habit = new Habit("h" + step, "");
+                ids.add(habit.getId());
+                assertNull(table.put(habit));
+                expected.put(habit.getId(), habit);
+            } else if (op < 8) {
+                UUID id = ids.get(random.nextInt(ids.size()));
+                Habit replacement = new Habit(id, "r" + step, "");
+                assertSame(expected.put(id, replacement), table.put(replacement));
+            } else {
+                UUID id = ids.get(random.nextInt(ids.size()));
+                assertSame(expected.remove(id), table.remove(id));
+            }
+
+            if (step % 1_000 == 0) {
+                views.add(table.publish());
+                viewContents.add(List.copyOf(expected.values()));
+            }
+        }
+
+        assertEquals(expected.size(), table.size());
+        assertEquals(List.copyOf(expected.values()), table.toList());
+        for (UUID id : ids) {
+            assertSame(expected.get(id), table.get(id));
+        }
+        for (int i = 0; i < views.size(); i++) {
+            HabitTable.View view = views.get(i);
+            assertEquals(viewContents.get(i), view.list());
+            for (Habit habit : viewContents.get(i)) {
+                assertSame(habit, view.get(habit.getId()));
+            }
+        }
+    }
+
+    @Test
+    void resetDropsChangesAfterPublish() {
+        HabitTable table = new HabitTable();
+        Habit kept = new Habit("Kept", "");
+        table.put(kept);
+        HabitTable.View view = table.publish();
+
+        Habit added = new Habit("Added", "");
+        table.put(added);
+        table.remove(kept.getId());
+        table.reset(view);
+
+        assertEquals(List.of(kept), table.toList());
+        assertSame(kept, table.get(kept.getId()));
+        assertNull(table.get(added.getId()));
+    }
+}
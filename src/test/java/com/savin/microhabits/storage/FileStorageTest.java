@@ -0,0 +1,89 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileStorageTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @EnumSource(SaveFormat.class)
+    void saveAfterFallingBackToTheBackupKeepsIt(SaveFormat format) throws IOException {
+        Path file = dir.resolve("habits.dat");
+        FileStorage storage = new FileStorage(file, format);
+        storage.save(List.of(new Habit("Read", "")));
+        storage.save(List.of(new Habit("Walk", "")));
+        Files.write(file, new byte[] {'M', 'I', 'C', 'R', 'O', 0x7f, 0x7f, 0x7f});
+
+        FileStorage reopened = new FileStorage(file, format);
+        assertEquals(List.of("Read"), names(reopened.load()));
+        assertTrue(Files.exists(dir.resolve("habits.dat.corrupt")));
+
+        // The first save after the fallback must not replace the backup, nor delete what it points at
+        reopened.save(List.of(new Habit("Swim", "")));
+        Files.delete(file);
+        assertEquals(List.of("Read"), names(new FileStorage(file, format).load()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SaveFormat.class)
+    void savedHabitsLoadUnchanged(SaveFormat format) throws IOException {
+        Path file = dir.resolve("habits.dat");
+        List<Habit> habits = generate(new Random(format.ordinal()), 100);
+        new FileStorage(file, format).save(habits);
+
+        assertEquals(contents(habits), contents(new FileStorage(file, format).load()));
+        FileStorage lazy = new FileStorage(file, format);
+        lazy.setLazyHistory(true);
+        assertEquals(contents(habits), contents(lazy.load()));
+    }
+
+    static List<String> names(List<Habit> habits) {
+        return habits.stream().map(Habit::getName).toList();
+    }
+
+    /**
+     * Habits with escapes in their text and histories mixing completed, not completed and
+     * unrecorded days, long runs and scattered days, so both V2 history encodings are used.
+     */
+    static List<Habit> generate(Random random, int count) {
+        List<Habit> habits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Habit habit = new Habit("Habit|" + i + "\\n", random.nextBoolean() ? "" : "desc " + random.nextInt());
+            long day = 18_000 + random.nextInt(1_000);
+            int days = random.nextInt(4) == 0 ? 0 : random.nextInt(800);
+            boolean dense = random.nextBoolean();
+            for (int d = 0; d < days; d++) {
+                if (dense || random.nextInt(5) == 0) {
+                    habit.markCompletedEpochDay(day + d, random.nextInt(10) != 0);
+                }
+            }
+            habits.add(habit);
+        }
+        return habits;
+    }
+
+    /**
+     * Everything a save must keep, in order, as comparable values.
+     */
+    static List<List<Object>> contents(List<Habit> habits) {
+        return habits.stream()
+                .map(h -> List.<Object>of(h.getId(), h.getName(), h.getDescription(),
+                        h.getDailyStatusReadOnly(), h.getSummary()))
+                .toList();
+    }
+}
@@ -0,0 +1,118 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+import com.savin.microhabits.service.HabitService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static com.savin.microhabits.storage.FileStorageTest.contents;
+import static com.savin.microhabits.storage.FileStorageTest.generate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitJournalTest {
+
+    private static final LocalDate START = LocalDate.of(2000, 1, 1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsAppendedDuringCompactionSurviveReplay() throws Exception {
+        for (int trial = 0; trial < 100; trial++) {
+            Path trialDir = Files.createDirectory(dir.resolve("t" + trial));
+            Path file = trialDir.resolve("habits.dat");
+            FileStorage storage = new FileStorage(file, SaveFormat.V2_BINARY);
+            // Sync every millisecond so periodic syncs fall between the cut and the rotation
+            HabitJournal journal = new HabitJournal(storage, trialDir.resolve("habits.dat.journal"), 1, 1);
+
+            Habit habit = new Habit("Read", "");
+            journal.recordDetails(habit);
+            mark(journal, habit, 0, 200);
+            spin();
+            journal.compact(List.of(habit.copy()));
+            // Appended after the cut: only the new journal has them
+            mark(journal, habit, 200, 400);
+            spin();
+            journal.close();
+
+            List<Habit> loaded = storage.load();
+            assertEquals(1, loaded.size());
+            assertEquals(habit.getDailyStatusReadOnly(), loaded.get(0).getDailyStatusReadOnly(), "trial " + trial);
+        }
+    }
+
+    @Test
+    void failedRotationKeepsJournaling() throws Exception {
+        Path file = dir.resolve("habits.dat");
+        FileStorage storage = new FileStorage(file, SaveFormat.V2_BINARY);
+        Path journalPath = dir.resolve("habits.dat.journal");
+        // A directory where the rotated journal goes makes the rotation fail after the channel is closed
+        Path rotated = Files.createDirectory(HabitJournal.rotatedPath(journalPath));
+        HabitJournal journal = new HabitJournal(storage, journalPath, Long.MAX_VALUE, 60_000);
+
+        Habit habit = new Habit("Read", "");
+        journal.recordDetails(habit);
+        mark(journal, habit, 0, 10);
+        journal.compact(List.of(habit.copy()));
+        mark(journal, habit, 10, 20);
+        journal.flush();
+        assertNull(journal.failure());
+        journal.close();
+
+        Files.delete(rotated);
+        List<Habit> loaded = storage.load();
+        assertEquals(1, loaded.size());
+        assertEquals(habit.getDailyStatusReadOnly(), loaded.get(0).getDailyStatusReadOnly());
+    }
+
+    @Test
+    void compactionOnlyWritesHabitsWithRecords() throws Exception {
+        Path file = dir.resolve("habits.dat");
+        FileStorage storage = new FileStorage(file, SaveFormat.V3_SEGMENTED);
+        storage.save(generate(new Random(1), 200));
+        Path segments = dir.resolve("habits.dat.seg1");
+        long before = Files.size(segments);
+
+        storage.setLazyHistory(true);
+        HabitService service = new HabitService();
+        service.replaceAll(storage.load());
+        service.setJournal(storage.openJournal());
+        Habit first = service.getHabitsReadOnly().get(0);
+        service.updateHabit(first.getId(), "Renamed", "");
+        service.addHabit("Added", "");
+        service.compactJournal();
+        storage.closeJournal();
+
+        // Appended to the current generation: the two habits, not all 200 again
+        assertFalse(Files.exists(dir.resolve("habits.dat.seg2")));
+        assertTrue(Files.size(segments) - before < before / 10, "appended " + (Files.size(segments) - before));
+        assertFalse(Files.exists(HabitJournal.rotatedPath(dir.resolve("habits.dat.journal"))));
+        assertEquals(contents(service.getHabitsReadOnly()), contents(new FileStorage(file, SaveFormat.V3_SEGMENTED).load()));
+    }
+
+    private static void mark(HabitJournal journal, Habit habit, int from, int to) {
+        for (int i = from; i < to; i++) {
+            LocalDate date = START.plusDays(i);
+            boolean done = i % 3 != 0;
+            habit.markCompleted(date, done);
+            journal.recordStatus(habit.getId(), date, done);
+        }
+    }
+
+    // Keeps the CPU busy for a moment so the journal's periodic sync becomes due
+    private static void spin() {
+        long end = System.nanoTime() + 2_000_000;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
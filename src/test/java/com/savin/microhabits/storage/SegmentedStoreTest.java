@@ -0,0 +1,139 @@
+package com.savin.microhabits.storage;
+
+import com.savin.microhabits.model.Habit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.savin.microhabits.storage.FileStorageTest.contents;
+import static com.savin.microhabits.storage.FileStorageTest.generate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deltaSaveReloadsLikeAFullSave() throws IOException {
+        Path file = dir.resolve("habits.dat");
+        FileStorage storage = new FileStorage(file, SaveFormat.V3_SEGMENTED);
+        List<Habit> habits = new ArrayList<>(generate(new Random(1), 200));
+        storage.save(habits);
+
+        Set<UUID> changed = change(habits, new Random(2));
+        storage.saveChanges(habits, changed);
+        // Appended to the first generation rather than written out again
+        assertTrue(Files.exists(dir.resolve("habits.dat.seg1")));
+        assertFalse(Files.exists(dir.resolve("habits.dat.seg2")));
+
+        FileStorage full = new FileStorage(dir.resolve("full.dat"), SaveFormat.V3_SEGMENTED);
+        full.save(habits);
+        assertEquals(contents(habits), contents(new FileStorage(file, SaveFormat.V3_SEGMENTED).load()));
+        assertEquals(contents(habits), contents(full.load()));
+
+        // Again from a lazy load, whose untouched habits are never decoded before the save
+        FileStorage lazy = new FileStorage(file, SaveFormat.V3_SEGMENTED);
+        lazy.setLazyHistory(true);
+        List<Habit> loaded = new ArrayList<>(lazy.load());
+        changed = change(loaded, new Random(3));
+        lazy.saveChanges(loaded, changed);
+        assertEquals(contents(loaded), contents(new FileStorage(file, SaveFormat.V3_SEGMENTED).load()));
+    }
+
+    @Test
+    void deadBytesAfterTheLastSegmentAreIgnored() throws IOException {
+        Path file = dir.resolve("habits.dat");
+        FileStorage storage = new FileStorage(file, SaveFormat.V3_SEGMENTED);
+        List<Habit> habits = new ArrayList<>(generate(new Random(4), 50));
+        storage.save(habits);
+
+        // Segments of a delta save cut short by a crash before its index was written
+        try (FileChannel segments = FileChannel.open(dir.resolve("habits.dat.seg1"), StandardOpenOption.APPEND)) {
+            segments.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5}));
+        }
+        assertEquals(contents(habits), contents(new FileStorage(file, SaveFormat.V3_SEGMENTED).load()));
+
+        Set<UUID> changed = change(habits, new Random(5));
+        storage.saveChanges(habits, changed);
+        assertEquals(contents(habits), contents(new FileStorage(file, SaveFormat.V3_SEGMENTED).load()));
+    }
+
+    @Test
+    void truncatedSegmentsFallBackToTheBackup() throws IOException {
+        Path file = dir.resolve("habits.dat");
+        FileStorage storage = new FileStorage(file, SaveFormat.V3_SEGMENTED);
+        List<Habit> first = generate(new Random(6), 50);
+        storage.save(first);
+        storage.save(generate(new Random(7), 50));
+
+        Path segments = dir.resolve("habits.dat.seg2");
+        try (FileChannel channel = FileChannel.open(segments, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        assertEquals(contents(first), contents(new FileStorage(file, SaveFormat.V3_SEGMENTED).load()));
+    }
+
+    @Test
+    void truncatedSegmentsWithoutABackupFailToLoad() throws IOException {
+        Path file = dir.resolve("habits.dat");
+        new FileStorage(file, SaveFormat.V3_SEGMENTED).save(generate(new Random(8), 50));
+
+        Path segments = dir.resolve("habits.dat.seg1");
+        try (FileChannel channel = FileChannel.open(segments, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertThrows(IOException.class, () -> new FileStorage(file, SaveFormat.V3_SEGMENTED).load());
+    }
+
+    @Test
+    void habitCountIsCheckedAgainstTheIndexSize() throws IOException {
+        Path file = dir.resolve("habits.dat");
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.writeBytes(SegmentedStore.MAGIC);
+        index.write(0);
+        index.write(1);
+        // 0x3fffffff habits, then a single 18-byte entry
+        index.writeBytes(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, 0x03});
+        index.writeBytes(new byte[18]);
+        Files.write(file, index.toByteArray());
+        Files.write(dir.resolve("habits.dat.seg1"), new byte[0]);
+
+        IOException ex = assertThrows(IOException.class, () -> new FileStorage(file, SaveFormat.V3_SEGMENTED).load());
+        assertTrue(ex.getMessage().contains("invalid habit count"), ex.getMessage());
+    }
+
+    // Renames, marks, adds and removes a few habits; returns the IDs to pass to saveChanges
+    private static Set<UUID> change(List<Habit> habits, Random random) {
+        Set<UUID> changed = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            int index = random.nextInt(habits.size());
+            Habit habit = habits.get(index).copy();
+            habit.setName("Changed " + i);
+            habit.markCompletedEpochDay(19_000 + random.nextInt(2_000), random.nextBoolean());
+            habits.set(index, habit);
+            changed.add(habit.getId());
+        }
+        habits.remove(random.nextInt(habits.size()));
+        Habit added = generate(random, 1).get(0);
+        habits.add(added);
+        changed.add(added.getId());
+        return changed;
+    }
+}